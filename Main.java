@@ -1,13 +1,84 @@
 import javax.swing.*;
 import controllers.MainController;
+import data.DataDirectoryLock;
+import data.TransactionLog;
+import services.DeadlineClock;
+import services.EventBus;
+import services.PledgeImportService;
+import services.StatisticsService;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Main entry point for the Crowdfunding System
 **/
 public class Main {
+    private static final String LOCKED_MESSAGE =
+            "The data files are in use by another running client or import";
+
     public static void main(String[] args) {
+        List<String> arguments = Arrays.asList(args);
+        boolean locked = lockDataDirectory();
+
+        // Headless bulk import: --import <file>
+        int importAt = arguments.indexOf("--import");
+        if (importAt >= 0) {
+            if (importAt + 1 >= args.length) {
+                System.err.println("Usage: --import <pledges.csv>");
+                System.exit(2);
+            }
+            if (!locked) {
+                System.err.println(LOCKED_MESSAGE);
+                System.exit(1);
+            }
+            System.exit(importPledges(args[importAt + 1]));
+        }
+        if (!locked) {
+            JOptionPane.showMessageDialog(null, LOCKED_MESSAGE, "Error", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+        }
+
+        // Scripted session for recording an AppCDS archive, see run.sh
+        boolean train = arguments.contains("--cds-train");
         SwingUtilities.invokeLater(() -> {
-            new MainController().start();
+            MainController controller = new MainController();
+            if (train) {
+                controller.train();
+            } else {
+                controller.start();
+            }
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Make this the only process writing the data files
+     */
+    private static boolean lockDataDirectory() {
+        try {
+            return DataDirectoryLock.acquire();
+        } catch (IOException e) {
+            System.err.println("Could not lock the data files: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Import a partner pledge file without starting the UI; returns the exit status
+     */
+    private static int importPledges(String filename) {
+        try {
+            TransactionLog.getInstance().recover();
+            EventBus eventBus = new EventBus();
+            DeadlineClock deadlineClock = new DeadlineClock(Clock.systemDefaultZone(), eventBus);
+            deadlineClock.start();
+            StatisticsService statisticsService = new StatisticsService(deadlineClock);
+            System.out.println(new PledgeImportService(statisticsService, eventBus).importFile(filename));
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Import failed: " + e.getMessage());
+            return 1;
+        }
+    }
+}
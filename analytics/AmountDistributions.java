@@ -0,0 +1,92 @@
+package analytics;
+
+import models.Pledge;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Pledge amount distributions per project, per reward tier and overall,
+ * kept as t-digests that are updated one pledge at a time
+ */
+public class AmountDistributions {
+    private final Map<String, TDigest> byProject = new HashMap<>();
+    private final Map<String, TDigest> byTier = new HashMap<>();
+    private TDigest overall = new TDigest();
+
+    /**
+     * Add the amount of a successful pledge; rejected pledges are ignored
+     */
+    public synchronized void add(Pledge pledge) {
+        if (!pledge.isSuccessful()) {
+            return;
+        }
+        double amount = pledge.getAmount();
+        byProject.computeIfAbsent(pledge.getProjectId(), k -> new TDigest()).add(amount);
+        if (pledge.getRewardTierId() != null) {
+            byTier.computeIfAbsent(pledge.getRewardTierId(), k -> new TDigest()).add(amount);
+        }
+        overall.add(amount);
+    }
+
+    public synchronized void clear() {
+        byProject.clear();
+        byTier.clear();
+        overall = new TDigest();
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        writeDigests(out, byProject);
+        writeDigests(out, byTier);
+        overall.writeTo(out);
+    }
+
+    /**
+     * Replace the distributions with ones written by writeTo
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        clear();
+        readDigests(in, byProject);
+        readDigests(in, byTier);
+        overall = TDigest.readFrom(in);
+    }
+
+    /**
+     * Amount at quantile q (0 to 1) for a project, or NaN if it has no pledges
+     */
+    public synchronized double projectQuantile(String projectId, double q) {
+        TDigest digest = byProject.get(projectId);
+        return digest != null ? digest.quantile(q) : Double.NaN;
+    }
+
+    /**
+     * Amount at quantile q (0 to 1) for a reward tier, or NaN if it has no pledges
+     */
+    public synchronized double tierQuantile(String tierId, double q) {
+        TDigest digest = byTier.get(tierId);
+        return digest != null ? digest.quantile(q) : Double.NaN;
+    }
+
+    /**
+     * Amount at quantile q (0 to 1) over all pledges, or NaN if there are none
+     */
+    public synchronized double overallQuantile(double q) {
+        return overall.quantile(q);
+    }
+
+    private static void writeDigests(DataOutput out, Map<String, TDigest> digests) throws IOException {
+        out.writeInt(digests.size());
+        for (Map.Entry<String, TDigest> digest : digests.entrySet()) {
+            out.writeUTF(digest.getKey());
+            digest.getValue().writeTo(out);
+        }
+    }
+
+    private static void readDigests(DataInput in, Map<String, TDigest> digests) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            digests.put(in.readUTF(), TDigest.readFrom(in));
+        }
+    }
+}
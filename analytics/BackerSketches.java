@@ -0,0 +1,133 @@
+package analytics;
+
+import models.Pledge;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Distinct backer counts per project, per category and overall, kept as
+ * HyperLogLog sketches that are updated one pledge at a time
+ *
+ * Counts across several projects or categories are sketch merges rather than
+ * unions of user ID sets.
+ */
+public class BackerSketches {
+    private static final double DEFAULT_ERROR = Double.parseDouble(
+            System.getProperty("crowdfund.backerCountError", "0.01"));
+
+    private final int precision;
+    private final Map<String, HyperLogLog> byProject = new HashMap<>();
+    private final Map<String, HyperLogLog> byCategory = new HashMap<>();
+    private HyperLogLog overall;
+
+    public BackerSketches() {
+        this(DEFAULT_ERROR);
+    }
+
+    /**
+     * @param relativeError target standard error of each estimate, e.g. 0.01 for 1%
+     */
+    public BackerSketches(double relativeError) {
+        this.precision = HyperLogLog.precisionFor(relativeError);
+        this.overall = new HyperLogLog(precision);
+    }
+
+    /**
+     * Count the backer of a successful pledge; rejected pledges are ignored
+     */
+    public synchronized void add(Pledge pledge, String categoryId) {
+        if (!pledge.isSuccessful()) {
+            return;
+        }
+        String userId = pledge.getUserId();
+        byProject.computeIfAbsent(pledge.getProjectId(), k -> new HyperLogLog(precision)).add(userId);
+        if (categoryId != null) {
+            byCategory.computeIfAbsent(categoryId, k -> new HyperLogLog(precision)).add(userId);
+        }
+        overall.add(userId);
+    }
+
+    public synchronized void clear() {
+        byProject.clear();
+        byCategory.clear();
+        overall = new HyperLogLog(precision);
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(precision);
+        writeSketches(out, byProject);
+        writeSketches(out, byCategory);
+        overall.writeTo(out);
+    }
+
+    /**
+     * Replace the sketches with ones written by writeTo
+     * Fails if they were written with another precision, e.g. after crowdfund.backerCountError changed
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        int saved = in.readInt();
+        if (saved != precision) {
+            throw new IOException("Backer sketches have precision " + saved + ", expected " + precision);
+        }
+        clear();
+        readSketches(in, byProject);
+        readSketches(in, byCategory);
+        overall = HyperLogLog.readFrom(in);
+    }
+
+    public synchronized long estimateProject(String projectId) {
+        HyperLogLog sketch = byProject.get(projectId);
+        return sketch != null ? sketch.estimate() : 0;
+    }
+
+    public synchronized long estimateCategory(String categoryId) {
+        HyperLogLog sketch = byCategory.get(categoryId);
+        return sketch != null ? sketch.estimate() : 0;
+    }
+
+    /**
+     * Distinct backers across several projects
+     */
+    public synchronized long estimateProjects(Collection<String> projectIds) {
+        return estimateUnion(byProject, projectIds);
+    }
+
+    /**
+     * Distinct backers across several categories
+     */
+    public synchronized long estimateCategories(Collection<String> categoryIds) {
+        return estimateUnion(byCategory, categoryIds);
+    }
+
+    public synchronized long estimateOverall() {
+        return overall.estimate();
+    }
+
+    private static void writeSketches(DataOutput out, Map<String, HyperLogLog> sketches) throws IOException {
+        out.writeInt(sketches.size());
+        for (Map.Entry<String, HyperLogLog> sketch : sketches.entrySet()) {
+            out.writeUTF(sketch.getKey());
+            sketch.getValue().writeTo(out);
+        }
+    }
+
+    private static void readSketches(DataInput in, Map<String, HyperLogLog> sketches) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            sketches.put(in.readUTF(), HyperLogLog.readFrom(in));
+        }
+    }
+
+    private long estimateUnion(Map<String, HyperLogLog> sketches, Collection<String> keys) {
+        HyperLogLog union = new HyperLogLog(precision);
+        for (String key : keys) {
+            HyperLogLog sketch = sketches.get(key);
+            if (sketch != null) {
+                union.merge(sketch);
+            }
+        }
+        return union.estimate();
+    }
+}
@@ -0,0 +1,257 @@
+package analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch for approximate distinct counts
+ *
+ * Uses 2^precision one-byte registers; the standard error of the estimate is
+ * about 1.04 / sqrt(2^precision). Sketches with the same precision can be
+ * merged, which gives the distinct count of the union.
+ *
+ * A new sketch keeps only its non-zero registers, as a sorted array of
+ * index and rank pairs, and switches to the full register array once that
+ * list would take more space. Most projects have few backers, so their
+ * sketches stay a few hundred bytes instead of 2^precision.
+ */
+public class HyperLogLog {
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+
+    private static final int SPARSE = 1;
+    private static final int DENSE = 0;
+
+    private final int precision;
+    // Null while the sketch is sparse
+    private byte[] registers;
+    // Non-zero registers as index << 8 | rank, sorted by index
+    private int[] entries = new int[4];
+    private int entryCount;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and "
+                    + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+    }
+
+    /**
+     * Create a sketch whose standard error is at most the given relative error
+     */
+    public static HyperLogLog forRelativeError(double relativeError) {
+        return new HyperLogLog(precisionFor(relativeError));
+    }
+
+    /**
+     * Smallest precision whose standard error does not exceed the given relative error
+     */
+    public static int precisionFor(double relativeError) {
+        double registersNeeded = Math.pow(1.04 / relativeError, 2);
+        int precision = (int) Math.ceil(Math.log(registersNeeded) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    public void add(String value) {
+        long hash = hash64(value);
+        int index = (int) (hash >>> (64 - precision));
+        // Rank of the first set bit in the remaining bits, capped when they are all zero
+        long rest = hash << precision;
+        int rank = rest == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+        raise(index, rank);
+    }
+
+    /**
+     * Set a register to rank if that is higher than its current value
+     */
+    private void raise(int index, int rank) {
+        if (registers != null) {
+            if (rank > registers[index]) {
+                registers[index] = (byte) rank;
+            }
+            return;
+        }
+        int position = find(index);
+        if (position >= 0) {
+            if (rank > (entries[position] & 0xff)) {
+                entries[position] = index << 8 | rank;
+            }
+            return;
+        }
+        if (entryCount + 1 > sparseLimit()) {
+            densify();
+            registers[index] = (byte) rank;
+            return;
+        }
+        int insertAt = -position - 1;
+        if (entryCount == entries.length) {
+            entries = Arrays.copyOf(entries, Math.min(entries.length * 2, sparseLimit()));
+        }
+        System.arraycopy(entries, insertAt, entries, insertAt + 1, entryCount - insertAt);
+        entries[insertAt] = index << 8 | rank;
+        entryCount++;
+    }
+
+    /**
+     * Position of the entry for a register, or -(insertion point) - 1 if it is zero
+     */
+    private int find(int index) {
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int found = entries[middle] >>> 8;
+            if (found < index) {
+                low = middle + 1;
+            } else if (found > index) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Four bytes per entry, so past a quarter of the registers the array is smaller
+    private int sparseLimit() {
+        return (1 << precision) / 4;
+    }
+
+    private void densify() {
+        registers = new byte[1 << precision];
+        for (int i = 0; i < entryCount; i++) {
+            registers[entries[i] >>> 8] = (byte) (entries[i] & 0xff);
+        }
+        entries = null;
+        entryCount = 0;
+    }
+
+    /**
+     * Fold another sketch into this one
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with different precision");
+        }
+        if (other.registers == null) {
+            for (int i = 0; i < other.entryCount; i++) {
+                raise(other.entries[i] >>> 8, other.entries[i] & 0xff);
+            }
+            return;
+        }
+        if (registers == null) {
+            densify();
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        int m = 1 << precision;
+        double sum = 0;
+        int zeros = 0;
+        if (registers == null) {
+            zeros = m - entryCount;
+            sum = zeros;
+            for (int i = 0; i < entryCount; i++) {
+                sum += 1.0 / (1L << (entries[i] & 0xff));
+            }
+        } else {
+            for (byte register : registers) {
+                sum += 1.0 / (1L << register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        if (registers == null) {
+            out.writeByte(SPARSE);
+            out.writeInt(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                out.writeInt(entries[i]);
+            }
+        } else {
+            out.writeByte(DENSE);
+            out.write(registers);
+        }
+    }
+
+    public static HyperLogLog readFrom(DataInput in) throws IOException {
+        HyperLogLog sketch;
+        try {
+            sketch = new HyperLogLog(in.readByte());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt sketch: " + e.getMessage());
+        }
+        int form = in.readByte();
+        if (form == DENSE) {
+            sketch.registers = new byte[1 << sketch.precision];
+            in.readFully(sketch.registers);
+        } else if (form == SPARSE) {
+            int count = in.readInt();
+            if (count < 0 || count > sketch.sparseLimit()) {
+                throw new IOException("Corrupt sketch: " + count + " sparse registers");
+            }
+            sketch.entries = new int[Math.max(4, count)];
+            for (int i = 0; i < count; i++) {
+                sketch.entries[i] = in.readInt();
+            }
+            sketch.entryCount = count;
+        } else {
+            throw new IOException("Corrupt sketch: unknown form " + form);
+        }
+        return sketch;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer to spread the bits
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
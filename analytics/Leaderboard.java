@@ -0,0 +1,112 @@
+package analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Live top-K ranking of keys by a running total
+ *
+ * Every key's total is kept, but only the leaders are held in sorted order.
+ * Totals only grow, so a key that drops out can come back only through its
+ * own update, and each update costs O(log k).
+ */
+public class Leaderboard {
+    /**
+     * One ranked key and its total
+     */
+    public static class Entry {
+        private final String key;
+        private final double score;
+
+        public Entry(String key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Double> scores = new HashMap<>();
+    // Highest score first, ties broken by key so the order is stable
+    private final TreeSet<String> leaders;
+
+    public Leaderboard(int capacity) {
+        this.capacity = capacity;
+        this.leaders = new TreeSet<>((a, b) -> {
+            int byScore = Double.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : a.compareTo(b);
+        });
+    }
+
+    /**
+     * Add a non-negative amount to a key's total
+     */
+    public synchronized void add(String key, double amount) {
+        boolean leading = scores.containsKey(key) && leaders.remove(key);
+        scores.merge(key, amount, Double::sum);
+
+        if (leading || leaders.size() < capacity) {
+            leaders.add(key);
+        } else if (leaders.comparator().compare(key, leaders.last()) < 0) {
+            leaders.pollLast();
+            leaders.add(key);
+        }
+    }
+
+    /**
+     * Current total for a key, 0 if it has none
+     */
+    public synchronized double score(String key) {
+        return scores.getOrDefault(key, 0.0);
+    }
+
+    /**
+     * The k highest totals (at most the capacity), highest first
+     */
+    public synchronized List<Entry> top(int k) {
+        List<Entry> entries = new ArrayList<>();
+        for (String key : leaders) {
+            if (entries.size() == k) {
+                break;
+            }
+            entries.add(new Entry(key, scores.get(key)));
+        }
+        return entries;
+    }
+
+    public synchronized void clear() {
+        leaders.clear();
+        scores.clear();
+    }
+
+    /**
+     * Write every key's total; the ranking is rebuilt on read
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(scores.size());
+        for (Map.Entry<String, Double> score : scores.entrySet()) {
+            out.writeUTF(score.getKey());
+            out.writeDouble(score.getValue());
+        }
+    }
+
+    /**
+     * Replace the totals with ones written by writeTo
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            add(in.readUTF(), in.readDouble());
+        }
+    }
+}
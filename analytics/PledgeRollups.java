@@ -0,0 +1,190 @@
+package analytics;
+
+import models.Pledge;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Pre-aggregated hourly and daily pledge volume per project, per category
+ * and overall
+ *
+ * Successful pledges are added one at a time as they arrive (or streamed in
+ * once as a backfill), so a trend chart reads the buckets instead of
+ * rescanning every pledge time.
+ */
+public class PledgeRollups {
+    public static final String ALL = "";
+
+    public enum Granularity {
+        HOURLY(ChronoUnit.HOURS), DAILY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public LocalDateTime bucketStart(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+    }
+
+    /**
+     * Pledge count and amount for one time bucket
+     */
+    public static class Bucket {
+        private final LocalDateTime start;
+        private int count;
+        private double amount;
+
+        public Bucket(LocalDateTime start, int count, double amount) {
+            this.start = start;
+            this.count = count;
+            this.amount = amount;
+        }
+
+        public LocalDateTime getStart() {
+            return start;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+    }
+
+    // Series key (project ID, category ID or ALL) -> bucket start -> bucket
+    private final Map<Granularity, Map<String, TreeMap<LocalDateTime, Bucket>>> projectSeries = new EnumMap<>(
+            Granularity.class);
+    private final Map<Granularity, Map<String, TreeMap<LocalDateTime, Bucket>>> categorySeries = new EnumMap<>(
+            Granularity.class);
+
+    public PledgeRollups() {
+        for (Granularity granularity : Granularity.values()) {
+            projectSeries.put(granularity, new HashMap<>());
+            categorySeries.put(granularity, new HashMap<>());
+        }
+    }
+
+    /**
+     * Add a pledge to every series it belongs to; rejected pledges are ignored
+     */
+    public synchronized void add(Pledge pledge, String categoryId) {
+        if (!pledge.isSuccessful()) {
+            return;
+        }
+        for (Granularity granularity : Granularity.values()) {
+            LocalDateTime start = granularity.bucketStart(pledge.getPledgeTime());
+            addTo(projectSeries.get(granularity), pledge.getProjectId(), start, pledge.getAmount());
+            addTo(projectSeries.get(granularity), ALL, start, pledge.getAmount());
+            if (categoryId != null) {
+                addTo(categorySeries.get(granularity), categoryId, start, pledge.getAmount());
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for (Granularity granularity : Granularity.values()) {
+            projectSeries.get(granularity).clear();
+            categorySeries.get(granularity).clear();
+        }
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        for (Granularity granularity : Granularity.values()) {
+            writeSeries(out, projectSeries.get(granularity));
+            writeSeries(out, categorySeries.get(granularity));
+        }
+    }
+
+    /**
+     * Replace the buckets with ones written by writeTo
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        clear();
+        for (Granularity granularity : Granularity.values()) {
+            readSeries(in, projectSeries.get(granularity));
+            readSeries(in, categorySeries.get(granularity));
+        }
+    }
+
+    /**
+     * Series for one project, or for all projects when projectId is ALL
+     */
+    public synchronized List<Bucket> getProjectSeries(String projectId, Granularity granularity) {
+        return copy(projectSeries.get(granularity).get(projectId));
+    }
+
+    /**
+     * Amount pledged to a project from the start of the hour containing since
+     */
+    public synchronized double getProjectAmountSince(String projectId, LocalDateTime since) {
+        TreeMap<LocalDateTime, Bucket> series = projectSeries.get(Granularity.HOURLY).get(projectId);
+        double amount = 0;
+        if (series != null) {
+            for (Bucket bucket : series.tailMap(Granularity.HOURLY.bucketStart(since), true).values()) {
+                amount += bucket.amount;
+            }
+        }
+        return amount;
+    }
+
+    public synchronized List<Bucket> getCategorySeries(String categoryId, Granularity granularity) {
+        return copy(categorySeries.get(granularity).get(categoryId));
+    }
+
+    private static void addTo(Map<String, TreeMap<LocalDateTime, Bucket>> series, String key,
+            LocalDateTime start, double amount) {
+        Bucket bucket = series.computeIfAbsent(key, k -> new TreeMap<>())
+                .computeIfAbsent(start, s -> new Bucket(s, 0, 0));
+        bucket.count++;
+        bucket.amount += amount;
+    }
+
+    private static void writeSeries(DataOutput out, Map<String, TreeMap<LocalDateTime, Bucket>> series)
+            throws IOException {
+        out.writeInt(series.size());
+        for (Map.Entry<String, TreeMap<LocalDateTime, Bucket>> entry : series.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Bucket bucket : entry.getValue().values()) {
+                out.writeLong(bucket.start.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(bucket.count);
+                out.writeDouble(bucket.amount);
+            }
+        }
+    }
+
+    private static void readSeries(DataInput in, Map<String, TreeMap<LocalDateTime, Bucket>> series)
+            throws IOException {
+        int keys = in.readInt();
+        for (int i = 0; i < keys; i++) {
+            TreeMap<LocalDateTime, Bucket> buckets = new TreeMap<>();
+            series.put(in.readUTF(), buckets);
+            int count = in.readInt();
+            for (int j = 0; j < count; j++) {
+                // Bucket starts are whole hours or days
+                LocalDateTime start = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+                buckets.put(start, new Bucket(start, in.readInt(), in.readDouble()));
+            }
+        }
+    }
+
+    private static List<Bucket> copy(TreeMap<LocalDateTime, Bucket> series) {
+        List<Bucket> buckets = new ArrayList<>();
+        if (series != null) {
+            for (Bucket bucket : series.values()) {
+                buckets.add(new Bucket(bucket.start, bucket.count, bucket.amount));
+            }
+        }
+        return buckets;
+    }
+}
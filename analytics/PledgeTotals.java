@@ -0,0 +1,187 @@
+package analytics;
+
+import models.Pledge;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pledge counts and amounts overall, per project and per user
+ *
+ * Large pledge lists are reduced in parallel: the list is cut into fixed-size
+ * chunks, each worker thread adds its chunks to its own partial totals and
+ * the per-worker partials are merged at the end. Amounts are summed in whole
+ * cents, so the result is identical for any parallelism level or scheduling.
+ */
+public class PledgeTotals {
+    private static final int CHUNK_SIZE = 16384;
+    private static final int DEFAULT_PARALLELISM = Integer.getInteger("crowdfund.statsParallelism",
+            Runtime.getRuntime().availableProcessors());
+    private static ForkJoinPool sharedPool;
+
+    /**
+     * Counts and amount for one group of pledges
+     */
+    public static class Totals {
+        private long pledges;
+        private long successful;
+        private long rejected;
+        private long amountCents;
+
+        void add(Pledge pledge) {
+            pledges++;
+            if (pledge.isSuccessful()) {
+                successful++;
+                amountCents += Math.round(pledge.getAmount() * 100);
+            } else if (pledge.isRejected()) {
+                rejected++;
+            }
+        }
+
+        void merge(Totals other) {
+            pledges += other.pledges;
+            successful += other.successful;
+            rejected += other.rejected;
+            amountCents += other.amountCents;
+        }
+
+        public int getPledges() {
+            return (int) pledges;
+        }
+
+        public int getSuccessful() {
+            return (int) successful;
+        }
+
+        public int getRejected() {
+            return (int) rejected;
+        }
+
+        /**
+         * Sum of successful pledge amounts
+         */
+        public double getAmount() {
+            return amountCents / 100.0;
+        }
+    }
+
+    private final Totals overall = new Totals();
+    private final Map<String, Totals> byProject = new HashMap<>();
+    private final Map<String, Totals> byUser = new HashMap<>();
+    // Projects each user pledged to successfully
+    private final Map<String, Set<String>> projectsByUser = new HashMap<>();
+
+    public void add(Pledge pledge) {
+        overall.add(pledge);
+        byProject.computeIfAbsent(pledge.getProjectId(), k -> new Totals()).add(pledge);
+        byUser.computeIfAbsent(pledge.getUserId(), k -> new Totals()).add(pledge);
+        if (pledge.isSuccessful()) {
+            projectsByUser.computeIfAbsent(pledge.getUserId(), k -> new HashSet<>()).add(pledge.getProjectId());
+        }
+    }
+
+    public void merge(PledgeTotals other) {
+        overall.merge(other.overall);
+        other.byProject.forEach((id, totals) -> byProject.computeIfAbsent(id, k -> new Totals()).merge(totals));
+        other.byUser.forEach((id, totals) -> byUser.computeIfAbsent(id, k -> new Totals()).merge(totals));
+        other.projectsByUser.forEach((id, projects) -> projectsByUser
+                .computeIfAbsent(id, k -> new HashSet<>()).addAll(projects));
+    }
+
+    public Totals getOverall() {
+        return overall;
+    }
+
+    /**
+     * Totals for a project, empty if it has no pledges
+     */
+    public Totals getProject(String projectId) {
+        return byProject.getOrDefault(projectId, new Totals());
+    }
+
+    /**
+     * Totals for a user, empty if they have no pledges
+     */
+    public Totals getUser(String userId) {
+        return byUser.getOrDefault(userId, new Totals());
+    }
+
+    /**
+     * Number of distinct projects a user pledged to successfully
+     */
+    public int getProjectsSupported(String userId) {
+        Set<String> projects = projectsByUser.get(userId);
+        return projects != null ? projects.size() : 0;
+    }
+
+    /**
+     * Aggregate pledges using the configured parallelism (-Dcrowdfund.statsParallelism)
+     */
+    public static PledgeTotals aggregate(List<Pledge> pledges) {
+        return aggregate(pledges, sharedPool());
+    }
+
+    /**
+     * Aggregate pledges with a given number of worker threads
+     */
+    public static PledgeTotals aggregate(List<Pledge> pledges, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return aggregate(pledges, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static PledgeTotals aggregate(List<Pledge> pledges, ForkJoinPool pool) {
+        Map<Thread, PledgeTotals> partials = new ConcurrentHashMap<>();
+        pool.invoke(new ChunkTask(pledges, 0, pledges.size(), partials));
+
+        PledgeTotals totals = new PledgeTotals();
+        for (PledgeTotals partial : partials.values()) {
+            totals.merge(partial);
+        }
+        return totals;
+    }
+
+    private static synchronized ForkJoinPool sharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool(Math.max(1, DEFAULT_PARALLELISM));
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Splits the list on chunk boundaries down to single chunks
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private final List<Pledge> pledges;
+        private final int from;
+        private final int to;
+        private final Map<Thread, PledgeTotals> partials;
+
+        ChunkTask(List<Pledge> pledges, int from, int to, Map<Thread, PledgeTotals> partials) {
+            this.pledges = pledges;
+            this.from = from;
+            this.to = to;
+            this.partials = partials;
+        }
+
+        @Override
+        protected void compute() {
+            int chunks = (to - from + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            if (chunks <= 1) {
+                // Only the current worker ever touches its own partial
+                PledgeTotals partial = partials.computeIfAbsent(Thread.currentThread(), t -> new PledgeTotals());
+                for (int i = from; i < to; i++) {
+                    partial.add(pledges.get(i));
+                }
+                return;
+            }
+
+            int mid = from + (chunks / 2) * CHUNK_SIZE;
+            invokeAll(new ChunkTask(pledges, from, mid, partials), new ChunkTask(pledges, mid, to, partials));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Merging t-digest for streaming quantile estimates
+ *
+ * Values are buffered and periodically merged into a bounded number of
+ * weighted centroids. Centroids near the tails are kept small, so extreme
+ * percentiles such as p99 stay accurate while memory stays proportional to
+ * the compression factor rather than the number of values.
+ */
+public class TDigest {
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroidCount;
+    private final double[] buffer;
+    private int buffered;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(200);
+    }
+
+    /**
+     * @param compression higher values keep more centroids and give more accurate quantiles
+     */
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression * Math.PI / 2) + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.buffer = new double[(int) Math.ceil(compression * 5)];
+    }
+
+    public void add(double value) {
+        if (buffered == buffer.length) {
+            compress();
+        }
+        buffer[buffered++] = value;
+        totalWeight++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public long size() {
+        return (long) totalWeight;
+    }
+
+    /**
+     * Estimate the value below which the given fraction of values fall
+     *
+     * @param q quantile between 0 and 1, e.g. 0.9 for p90
+     * @return the estimate, or NaN when no values have been added
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (centroidCount == 1) {
+            return means[0];
+        }
+
+        double index = q * totalWeight;
+        if (index <= weights[0] / 2) {
+            return interpolate(min, means[0], index / (weights[0] / 2));
+        }
+
+        double cumulative = weights[0] / 2;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (index <= cumulative + step) {
+                return interpolate(means[i], means[i + 1], (index - cumulative) / step);
+            }
+            cumulative += step;
+        }
+
+        double lastHalf = weights[centroidCount - 1] / 2;
+        return interpolate(means[centroidCount - 1], max, Math.min(1, (index - cumulative) / lastHalf));
+    }
+
+    /**
+     * Write the centroids, merging buffered values first
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        compress();
+        out.writeDouble(compression);
+        out.writeInt(centroidCount);
+        for (int i = 0; i < centroidCount; i++) {
+            out.writeDouble(means[i]);
+            out.writeDouble(weights[i]);
+        }
+        out.writeDouble(totalWeight);
+        out.writeDouble(min);
+        out.writeDouble(max);
+    }
+
+    public static TDigest readFrom(DataInput in) throws IOException {
+        TDigest digest = new TDigest(in.readDouble());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            digest.centroidCount = digest.append(i, in.readDouble(), in.readDouble());
+        }
+        digest.totalWeight = in.readDouble();
+        digest.min = in.readDouble();
+        digest.max = in.readDouble();
+        return digest;
+    }
+
+    /**
+     * Merge buffered values into the centroids
+     */
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+
+        // Two-way merge of the sorted centroids and sorted buffer
+        int total = centroidCount + buffered;
+        double[] mergedMeans = new double[total];
+        double[] mergedWeights = new double[total];
+        int c = 0;
+        int b = 0;
+        for (int i = 0; i < total; i++) {
+            if (b == buffered || (c < centroidCount && means[c] <= buffer[b])) {
+                mergedMeans[i] = means[c];
+                mergedWeights[i] = weights[c++];
+            } else {
+                mergedMeans[i] = buffer[b++];
+                mergedWeights[i] = 1;
+            }
+        }
+        buffered = 0;
+
+        // Greedily combine neighbours while the combined centroid stays within one unit of the scale function
+        int count = 0;
+        double currentMean = mergedMeans[0];
+        double currentWeight = mergedWeights[0];
+        double weightSoFar = 0;
+        for (int i = 1; i < total; i++) {
+            double proposed = currentWeight + mergedWeights[i];
+            double qLeft = weightSoFar / totalWeight;
+            double qRight = (weightSoFar + proposed) / totalWeight;
+            if (scale(qRight) - scale(qLeft) <= 1) {
+                currentMean += (mergedMeans[i] - currentMean) * mergedWeights[i] / proposed;
+                currentWeight = proposed;
+            } else {
+                count = append(count, currentMean, currentWeight);
+                weightSoFar += currentWeight;
+                currentMean = mergedMeans[i];
+                currentWeight = mergedWeights[i];
+            }
+        }
+        centroidCount = append(count, currentMean, currentWeight);
+    }
+
+    private int append(int index, double mean, double weight) {
+        if (index == means.length) {
+            means = Arrays.copyOf(means, index * 2);
+            weights = Arrays.copyOf(weights, index * 2);
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    /**
+     * k1 scale function: centroids get smaller towards q = 0 and q = 1
+     */
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    private static double interpolate(double from, double to, double fraction) {
+        return from + (to - from) * fraction;
+    }
+}
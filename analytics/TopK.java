@@ -0,0 +1,37 @@
+package analytics;
+
+import java.util.*;
+
+/**
+ * Selects the k largest items with a bounded min-heap
+ *
+ * Each item costs at most O(log k), so picking the leaders out of n items is
+ * O(n log k) instead of sorting all n.
+ */
+public final class TopK {
+    private TopK() {
+    }
+
+    /**
+     * The k largest items by the comparator, largest first
+     */
+    public static <T> List<T> select(Iterable<T> items, int k, Comparator<? super T> comparator) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        // The heap root is the smallest of the current leaders
+        PriorityQueue<T> heap = new PriorityQueue<>(Math.min(k, 1024), comparator);
+        for (T item : items) {
+            if (heap.size() < k) {
+                heap.add(item);
+            } else if (comparator.compare(item, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+
+        List<T> leaders = new ArrayList<>(heap);
+        leaders.sort(comparator.reversed());
+        return leaders;
+    }
+}
@@ -1,21 +1,53 @@
 package controllers;
 
-import models.User;
+import models.*;
+import data.DataWatcher;
+import data.InventoryService;
+import data.SnapshotFile;
+import data.SnapshotStore;
+import data.TransactionLog;
 import data.UserDAO;
+import data.WarmUp;
+import services.DeadlineClock;
+import services.EventBus;
+import services.PledgeService;
+import services.ProjectService;
+import services.SessionManager;
+import services.StatisticsService;
+import services.UserContext;
+import services.ValidationCache;
 import views.*;
 import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.util.List;
 
 /**
  * Main Controller - coordinates the application flow
- * Handles authentication and navigation between views
+ * Handles authentication and navigation between views for the one desktop
+ * session; the services it creates are shared and can serve other sessions
  */
 public class MainController {
-    private User currentUser;
-    private UserDAO userDAO;
+    // Account used by the scripted CDS training session
+    private static final String TRAINING_USERNAME = System.getProperty("crowdfund.trainingUser", "admin");
+    private static final String TRAINING_PASSWORD = System.getProperty("crowdfund.trainingPassword", "admin");
+    private static final long TRAINING_STEP_MILLIS = 500;
+
+    private UserContext userContext;
+    private SessionManager sessions;
+    private DeadlineClock deadlineClock;
+    private ValidationCache validationCache;
+    private StatisticsService statisticsService;
+    private ProjectService projectService;
+    private PledgeService pledgeService;
     private ProjectController projectController;
     private PledgeController pledgeController;
     private StatisticsController statisticsController;
+    private DataWatcher dataWatcher;
+    private EventBus eventBus;
 
     // Views
     private LoginView loginView;
@@ -24,17 +56,209 @@ public class MainController {
     private StatisticsView statisticsView;
 
     public MainController() {
-        this.userDAO = new UserDAO();
-        this.projectController = new ProjectController(this);
-        this.pledgeController = new PledgeController(this);
-        this.statisticsController = new StatisticsController(this);
+        recoverTransactions();
+        warmUp();
+        SnapshotFile.scheduleWrites();
+        this.eventBus = new EventBus();
+        this.sessions = new SessionManager(new UserDAO());
+        this.deadlineClock = new DeadlineClock(Clock.systemDefaultZone(), eventBus);
+        this.validationCache = new ValidationCache(deadlineClock);
+        startDeadlineClock();
+        this.statisticsService = new StatisticsService(deadlineClock);
+        this.projectService = new ProjectService(statisticsService, deadlineClock);
+        this.pledgeService = new PledgeService(statisticsService, eventBus, validationCache);
+        this.projectController = new ProjectController(this, projectService);
+        this.pledgeController = new PledgeController(this, pledgeService);
+        this.statisticsController = new StatisticsController(this, statisticsService);
+        eventBus.subscribe(EventBus.PledgeAccepted.class, e -> statisticsService.recordPledge(e.getPledge()));
+        eventBus.subscribe(EventBus.ProjectUpdated.class, e -> deadlineClock.projectUpdated(e.getProject()));
+        eventBus.subscribe(EventBus.ProjectUpdated.class, e -> validationCache.projectUpdated(e.getProject()));
+        eventBus.subscribe(EventBus.TierQuantityChanged.class, e -> validationCache.tierQuantityChanged(e.getTierId()));
+    }
+
+    /**
+     * Cache the current day, track project statuses until the deadlines pass and
+     * load the rules used to reject pledges from memory
+     */
+    private void startDeadlineClock() {
+        try {
+            deadlineClock.start();
+            validationCache.load();
+        } catch (IOException e) {
+            showError("Error loading projects: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply pledges that were committed but not yet written to the tables
+     * when the application last stopped
+     */
+    private void recoverTransactions() {
+        try {
+            TransactionLog.getInstance().recover();
+        } catch (IOException e) {
+            showError("Error recovering pending pledges: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load every table concurrently so the first screens read memory
+     */
+    private void warmUp() {
+        try {
+            System.out.println(WarmUp.run());
+        } catch (IOException e) {
+            // Not fatal, the stores load on first use instead
+            System.err.println("Warm-up failed: " + e.getMessage());
+        }
     }
 
     /**
      * Start the application
      */
     public void start() {
+        startDataWatcher();
         showLoginView();
+        // Plaintext passwords left by older data are hashed in the background
+        UserDAO.startPasswordMigration();
+    }
+
+    /**
+     * Start the application and walk through login, the project list, a project and
+     * statistics once, then exit
+     * Run under -XX:ArchiveClassesAtExit so the classes this loads go into the AppCDS archive
+     * The login and exit write to the data files, so run.sh starts it in a copy of them
+     */
+    public void train() {
+        start();
+        Thread trainer = new Thread(() -> {
+            try {
+                trainingStep(() -> {
+                    if (!login(TRAINING_USERNAME, TRAINING_PASSWORD)) {
+                        throw new IllegalStateException("Training login failed for " + TRAINING_USERNAME);
+                    }
+                    showProjectListView();
+                });
+                trainingStep(() -> {
+                    List<Project> projects = projectController.getAllProjects();
+                    if (!projects.isEmpty()) {
+                        showProjectDetailView(projects.get(0).getProjectId());
+                    }
+                });
+                trainingStep(this::showStatisticsView);
+                trainingStep(this::logout);
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Training run failed: " + e);
+                System.exit(1);
+            }
+        }, "cds-training");
+        trainer.start();
+    }
+
+    private void trainingStep(Runnable step) throws Exception {
+        SwingUtilities.invokeAndWait(step);
+        // Let the frame lay out and paint so rendering classes are loaded too
+        Thread.sleep(TRAINING_STEP_MILLIS);
+    }
+
+    /**
+     * Print the time from JVM start until the first window is on screen
+     */
+    private void reportFirstFrame(JFrame frame) {
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                boolean archived = ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                        .anyMatch(argument -> argument.startsWith("-XX:SharedArchiveFile"));
+                System.out.println("First frame after " + ManagementFactory.getRuntimeMXBean().getUptime()
+                        + " ms (AppCDS archive " + (archived ? "in use" : "not used") + ")");
+                frame.removeWindowListener(this);
+            }
+        });
+    }
+
+    /**
+     * Watch the CSV files so external edits show up without a manual refresh
+     */
+    private void startDataWatcher() {
+        dataWatcher = new DataWatcher();
+        // Registered first so listeners below already read the new snapshot
+        dataWatcher.addListener(SnapshotStore.getInstance().invalidationListener());
+        dataWatcher.addListener(new DataWatcher.Listener() {
+            @Override
+            public void categoriesReloaded(List<Category> categories) {
+                SwingUtilities.invokeLater(() -> {
+                    if (projectListView != null)
+                        projectListView.categoriesReloaded(categories);
+                });
+            }
+
+            @Override
+            public void projectsReloaded(List<Project> projects) {
+                deadlineClock.load(projects);
+                validationCache.projectsReloaded(projects);
+                statisticsService.projectsReloaded(projects);
+                SwingUtilities.invokeLater(() -> {
+                    if (projectListView != null)
+                        projectListView.refreshProjects();
+                    if (projectDetailView != null && projectDetailView.isVisible())
+                        projectDetailView.projectsReloaded(projects);
+                });
+            }
+
+            @Override
+            public void rewardTiersReloaded(List<RewardTier> tiers) {
+                InventoryService.getInstance().tiersReloaded(tiers);
+                try {
+                    validationCache.tiersReloaded(tiers);
+                } catch (IOException e) {
+                    System.err.println("Could not reload reward tiers for validation: " + e.getMessage());
+                }
+                SwingUtilities.invokeLater(() -> {
+                    if (projectDetailView != null && projectDetailView.isVisible())
+                        projectDetailView.rewardTiersReloaded(tiers);
+                });
+            }
+
+            @Override
+            public void pledgesReloaded(List<Pledge> pledges) {
+                statisticsService.pledgesReloaded();
+                SwingUtilities.invokeLater(() -> refreshVisibleStatistics());
+            }
+
+            @Override
+            public void pledgesAppended(List<Pledge> pledges) {
+                statisticsService.pledgesAppended(pledges);
+                SwingUtilities.invokeLater(() -> refreshVisibleStatistics());
+            }
+        });
+
+        try {
+            dataWatcher.start();
+        } catch (IOException e) {
+            // Not fatal, the Refresh buttons still work
+            System.err.println("Could not watch data directory: " + e.getMessage());
+        }
+    }
+
+    private void refreshVisibleStatistics() {
+        if (statisticsView != null && statisticsView.isVisible())
+            statisticsView.refreshStatistics();
+    }
+
+    /**
+     * Get the bus that carries domain change events
+     */
+    public EventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * Get the data directory watcher
+     */
+    public DataWatcher getDataWatcher() {
+        return dataWatcher;
     }
 
     /**
@@ -43,6 +267,7 @@ public class MainController {
     public void showLoginView() {
         if (loginView == null) {
             loginView = new LoginView(this);
+            reportFirstFrame(loginView);
         }
         hideAllViews();
         loginView.setVisible(true);
@@ -89,9 +314,9 @@ public class MainController {
      */
     public boolean login(String username, String password) {
         try {
-            User user = userDAO.authenticate(username, password);
-            if (user != null) {
-                this.currentUser = user;
+            SessionManager.Session session = sessions.login(username, password);
+            if (session != null) {
+                this.userContext = UserContext.of(session);
                 return true;
             }
         } catch (IOException e) {
@@ -104,15 +329,36 @@ public class MainController {
      * Logout current user
      */
     public void logout() {
-        this.currentUser = null;
+        if (userContext != null) {
+            sessions.logout(userContext.getSessionToken());
+        }
+        this.userContext = null;
         showLoginView();
     }
 
     /**
-     * Get current logged in user
+     * Get current logged in user, or null once the session has expired
      */
     public User getCurrentUser() {
-        return currentUser;
+        UserContext context = getUserContext();
+        return context != null ? context.getUser() : null;
+    }
+
+    /**
+     * Get the context service calls run under, or null once the session has expired
+     */
+    public UserContext getUserContext() {
+        if (userContext != null && sessions.resolve(userContext.getSessionToken()) == null) {
+            this.userContext = null;
+        }
+        return userContext;
+    }
+
+    /**
+     * Get the session store shared by all clients of this process
+     */
+    public SessionManager getSessionManager() {
+        return sessions;
     }
 
     /**
@@ -129,6 +375,21 @@ public class MainController {
         return pledgeController;
     }
 
+    /**
+     * Get the shared, UI-free services
+     */
+    public ProjectService getProjectService() {
+        return projectService;
+    }
+
+    public PledgeService getPledgeService() {
+        return pledgeService;
+    }
+
+    public StatisticsService getStatisticsService() {
+        return statisticsService;
+    }
+
     /**
      * Get statistics controller
      */
@@ -0,0 +1,167 @@
+package data;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Reads CSV lines as raw bytes and decodes only those whose key column
+ * equals a given value
+ *
+ * The key field is located by counting separators and compared byte by byte,
+ * so rejected lines are never turned into Strings. A line with a quote before
+ * or inside the key field is decoded and checked the slow way.
+ */
+final class CSVScanner implements Iterator<String[]>, Closeable {
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+
+    private final InputStream in;
+    private final Charset charset;
+    private final int column;
+    private final String value;
+    private final byte[] key;
+
+    private byte[] buffer = new byte[CSVUtil.WRITE_BUFFER_SIZE];
+    private int start; // First unconsumed byte
+    private int end; // One past the last byte read
+    private boolean eof;
+    private String[] next;
+
+    /**
+     * @param column key column index, or -1 to accept every line
+     */
+    CSVScanner(File file, int column, String value) throws IOException {
+        this.in = new FileInputStream(file);
+        this.charset = Charset.defaultCharset();
+        this.column = column;
+        this.value = value;
+        this.key = value != null ? value.getBytes(charset) : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public String[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String[] record = next;
+        next = null;
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Find the next matching line and decode it, or return null at end of file
+     */
+    private String[] advance() throws IOException {
+        while (true) {
+            int newline = indexOfNewline();
+            if (newline < 0) {
+                if (eof) {
+                    if (start == end) {
+                        return null;
+                    }
+                    // Last line without a trailing newline
+                    newline = end;
+                } else {
+                    fill();
+                    continue;
+                }
+            }
+
+            int lineStart = start;
+            int lineEnd = newline > lineStart && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+            start = Math.min(newline + 1, end);
+
+            int match = matches(lineStart, lineEnd);
+            if (match != 0) {
+                String[] record = CSVUtil.parseCSVLine(new String(buffer, lineStart, lineEnd - lineStart, charset));
+                if (match > 0 || (column < record.length && record[column].equals(value))) {
+                    return record;
+                }
+            }
+        }
+    }
+
+    /**
+     * 1 if the key field matches, 0 if not, -1 if the line must be decoded to decide
+     */
+    private int matches(int from, int to) {
+        if (column < 0) {
+            return 1;
+        }
+        int field = 0;
+        int fieldStart = from;
+        for (int i = from; i < to && field <= column; i++) {
+            byte b = buffer[i];
+            if (b == QUOTE) {
+                return -1;
+            }
+            if (b == SEPARATOR) {
+                if (field == column) {
+                    return equalsKey(fieldStart, i) ? 1 : 0;
+                }
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        return field == column && equalsKey(fieldStart, to) ? 1 : 0;
+    }
+
+    private boolean equalsKey(int from, int to) {
+        if (to - from != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer[from + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOfNewline() {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move the partial line to the front and read more, growing the buffer for long lines
+     */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            eof = true;
+        } else {
+            end += read;
+        }
+    }
+}
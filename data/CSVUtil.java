@@ -1,6 +1,11 @@
 package data;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
 import java.util.*;
 
 /**
@@ -10,6 +15,67 @@ import java.util.*;
 public class CSVUtil {
     private static final String CSV_SEPARATOR = ",";
     private static final String CSV_QUOTE = "\"";
+    static final int WRITE_BUFFER_SIZE = 1 << 16;
+    // Bytes at each end of a prefix that checksumBefore covers
+    private static final int CHECK_BYTES = 4096;
+
+    /**
+     * How hard a save tries to survive a crash or power loss
+     */
+    public enum Durability {
+        NONE, // Atomic replace only, data may still sit in the OS cache
+        FILE, // Force the new file to disk before replacing the old one
+        FULL // Also force the directory so the rename itself is durable
+    }
+
+    private static volatile Durability durability = parseDurability(System.getProperty("crowdfund.durability"));
+
+    /**
+     * Durability named by a -Dcrowdfund.durability value; unknown values warn and fall back to FILE
+     */
+    private static Durability parseDurability(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Durability.FILE;
+        }
+        try {
+            return Durability.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown crowdfund.durability '" + value + "', expected one of "
+                    + Arrays.toString(Durability.values()) + "; using " + Durability.FILE);
+            return Durability.FILE;
+        }
+    }
+
+    public static Durability getDurability() {
+        return durability;
+    }
+
+    public static void setDurability(Durability level) {
+        durability = level;
+    }
+
+    /**
+     * CRC32 of the first and last CHECK_BYTES bytes before offset
+     * A file that still has the same value at a known offset was most likely only appended to;
+     * a rewrite that changes rows near either end of the prefix changes the value
+     */
+    static long checksumBefore(File file, long offset) throws IOException {
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        if (offset > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                byte[] head = new byte[(int) Math.min(CHECK_BYTES, offset)];
+                raf.readFully(head);
+                crc.update(head);
+                if (offset > head.length) {
+                    byte[] tail = new byte[(int) Math.min(CHECK_BYTES, offset - head.length)];
+                    raf.seek(offset - tail.length);
+                    raf.readFully(tail);
+                    crc.update(tail);
+                }
+            }
+        }
+        return crc.getValue();
+    }
 
     /**
      * Read CSV file and return list of string arrays
@@ -33,21 +99,259 @@ public class CSVUtil {
         return records;
     }
 
+    /**
+     * Stream a CSV file one record at a time without holding it in memory
+     */
+    public static void forEachRecord(String filename, java.util.function.Consumer<String[]> action)
+            throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) {
+            return;
+        }
+
+        try (BufferedReader br = new BufferedReader(new FileReader(file), WRITE_BUFFER_SIZE)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                action.accept(parseCSVLine(line));
+            }
+        }
+    }
+
+    /**
+     * Lazily read records one line at a time
+     * The file stays open until the stream is closed
+     */
+    public static java.util.stream.Stream<String[]> streamRecords(String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) {
+            return java.util.stream.Stream.empty();
+        }
+
+        BufferedReader br = new BufferedReader(new FileReader(file), WRITE_BUFFER_SIZE);
+        return br.lines().map(CSVUtil::parseCSVLine).onClose(() -> {
+            try {
+                br.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Read only the records whose column equals value
+     * The column is compared on the raw bytes, other lines are never decoded
+     */
+    public static void forEachRecordWhere(String filename, int column, String value,
+            java.util.function.Consumer<String[]> action) throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) {
+            return;
+        }
+
+        try (CSVScanner scanner = new CSVScanner(file, column, value)) {
+            while (scanner.hasNext()) {
+                action.accept(scanner.next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Lazily read only the records whose column equals value
+     * The file stays open until the stream is closed
+     */
+    public static java.util.stream.Stream<String[]> streamRecordsWhere(String filename, int column, String value)
+            throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) {
+            return java.util.stream.Stream.empty();
+        }
+
+        CSVScanner scanner = new CSVScanner(file, column, value);
+        return java.util.stream.StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(scanner, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        scanner.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
     /**
      * Write list of string arrays to CSV file
+     * The records go to a temporary file which then atomically replaces the
+     * target, so a crash mid-write leaves the previous version intact
      */
     public static void writeCSV(String filename, List<String[]> records) throws IOException {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(filename))) {
-            for (String[] record : records) {
-                pw.println(formatCSVLine(record));
+        writeCSV(filename, records, durability);
+    }
+
+    /**
+     * Write a CSV file with a durability other than the configured one
+     */
+    static void writeCSV(String filename, List<String[]> records, Durability level) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+
+        try {
+            copyPermissions(target, temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                BufferedWriter writer = new BufferedWriter(
+                        Channels.newWriter(channel, Charset.defaultCharset().newEncoder(), -1),
+                        WRITE_BUFFER_SIZE);
+                for (String[] record : records) {
+                    writer.write(formatCSVLine(record));
+                    writer.newLine();
+                }
+                writer.flush();
+
+                if (level != Durability.NONE) {
+                    channel.force(true);
+                }
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        if (level == Durability.FULL) {
+            forceDirectory(target.getParent());
+        }
+    }
+
+    /**
+     * Append records to the end of a CSV file without rewriting it
+     * The header is written first when the file is new or empty
+     */
+    public static void appendCSV(String filename, String[] header, List<String[]> records) throws IOException {
+        appendCSV(filename, header, records, null);
+    }
+
+    /**
+     * Append records; a last line without its newline that keepUnterminated rejects is cut off first,
+     * e.g. a row torn by an interrupted append
+     * On failure the file is cut back to its old length, so retrying the append cannot duplicate rows
+     */
+    static void appendCSV(String filename, String[] header, List<String[]> records,
+            java.util.function.Predicate<String[]> keepUnterminated) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        Path target = Paths.get(filename);
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            boolean needsNewline = false;
+            if (size > 0) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, size - 1);
+                needsNewline = last.get(0) != '\n';
             }
+            if (needsNewline && keepUnterminated != null) {
+                long start = lastLineStart(channel, size);
+                if (start >= 0 && !keepUnterminated.test(parseCSVLine(readString(channel, start, size)))) {
+                    channel.truncate(start);
+                    size = start;
+                    needsNewline = false;
+                }
+            }
+            channel.position(size);
+
+            try {
+                BufferedWriter writer = new BufferedWriter(
+                        Channels.newWriter(channel, Charset.defaultCharset().newEncoder(), -1),
+                        WRITE_BUFFER_SIZE);
+                if (needsNewline) {
+                    writer.newLine();
+                }
+                if (size == 0 && header != null) {
+                    writer.write(formatCSVLine(header));
+                    writer.newLine();
+                }
+                for (String[] record : records) {
+                    writer.write(formatCSVLine(record));
+                    writer.newLine();
+                }
+                writer.flush();
+
+                if (durability != Durability.NONE) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                channel.truncate(size);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Cut a file back to a length recorded before an append
+     */
+    static void truncate(String filename, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    /**
+     * Offset just past the last newline before end, 0 if there is none, or -1 if the line is too long to check
+     */
+    private static long lastLineStart(FileChannel channel, long end) throws IOException {
+        int length = (int) Math.min(end, CHECK_BYTES);
+        ByteBuffer tail = ByteBuffer.allocate(length);
+        channel.read(tail, end - length);
+        for (int i = length - 1; i >= 0; i--) {
+            if (tail.get(i) == '\n') {
+                return end - length + i + 1;
+            }
+        }
+        return length == end ? 0 : -1;
+    }
+
+    private static String readString(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+        channel.read(bytes, start);
+        return new String(bytes.array(), Charset.defaultCharset());
+    }
+
+    /**
+     * Keep the original file mode, temporary files are created owner-only
+     */
+    private static void copyPermissions(Path from, Path to) {
+        try {
+            if (Files.exists(from)) {
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+            }
+        } catch (UnsupportedOperationException | IOException e) {
+            // Not a POSIX file system
+        }
+    }
+
+    /**
+     * Flush directory metadata so a completed rename survives power loss
+     * Not every platform allows opening a directory, in which case this is a no-op
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directory sync is not supported here (e.g. Windows)
         }
     }
 
     /**
      * Parse a CSV line handling quotes and escaping
      */
-    private static String[] parseCSVLine(String line) {
+    static String[] parseCSVLine(String line) {
         List<String> result = new ArrayList<>();
         boolean inQuotes = false;
         StringBuilder currentField = new StringBuilder();
@@ -82,7 +386,7 @@ public class CSVUtil {
     /**
      * Format array of strings as CSV line with proper escaping
      */
-    private static String formatCSVLine(String[] fields) {
+    static String formatCSVLine(String[] fields) {
         StringBuilder line = new StringBuilder();
 
         for (int i = 0; i < fields.length; i++) {
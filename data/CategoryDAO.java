@@ -8,7 +8,7 @@ import java.util.*;
  * Data Access Object for Category model
  */
 public class CategoryDAO {
-    private static final String CSV_FILE = "categories.csv";
+    static final String CSV_FILE = "categories.csv";
     private static final String[] HEADERS = { "categoryId", "name", "description" };
 
     public List<Category> loadCategories() throws IOException {
@@ -43,6 +43,7 @@ public class CategoryDAO {
         }
 
         CSVUtil.writeCSV(CSV_FILE, records);
+        SnapshotStore.getInstance().invalidate();
     }
 
     public Category findById(String categoryId) throws IOException {
@@ -0,0 +1,46 @@
+package data;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive lock on the data directory, held for the life of the process
+ *
+ * Sequences, the transaction log and the amount files assume a single
+ * writer process, so the client and the bulk import take this lock before
+ * touching any table. The operating system releases it when the process
+ * exits, even after a crash.
+ */
+public class DataDirectoryLock {
+    static final String FILE = "crowdfund.lock";
+
+    private static FileChannel channel;
+    private static FileLock lock;
+
+    /**
+     * Take the lock; returns false if another process holds it
+     */
+    public static synchronized boolean acquire() throws IOException {
+        if (lock != null) {
+            return true;
+        }
+        FileChannel opened = FileChannel.open(Paths.get(FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock taken;
+        try {
+            taken = opened.tryLock();
+        } catch (OverlappingFileLockException e) {
+            taken = null;
+        }
+        if (taken == null) {
+            opened.close();
+            return false;
+        }
+        channel = opened;
+        lock = taken;
+        return true;
+    }
+}
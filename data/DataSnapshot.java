@@ -0,0 +1,130 @@
+package data;
+
+import models.*;
+import java.util.*;
+
+/**
+ * Immutable, versioned view of users, categories, projects and pledges
+ *
+ * A reader pins one snapshot and sees every table as of the same instant:
+ * a pledge is never visible without its project's currentAmount update.
+ * The objects it hands out are shared with other readers and must not be
+ * modified.
+ */
+public final class DataSnapshot {
+    private final long version;
+    private final List<User> users;
+    // Hash indexes over users, shared by derived snapshots, never modified
+    private final Map<String, User> usersById;
+    private final Map<String, User> usersByName;
+    private final List<Category> categories;
+    private final Project[] projects;
+    private final Map<String, Integer> projectIndex; // Shared by derived snapshots, never modified
+    // Append-only: later versions may fill slots past pledgeCount in the same array
+    private final Pledge[] pledges;
+    private final int pledgeCount;
+
+    DataSnapshot(long version, List<User> users, List<Category> categories, List<Project> projects,
+            List<Pledge> pledges) {
+        this.version = version;
+        this.users = Collections.unmodifiableList(new ArrayList<>(users));
+        this.usersById = new HashMap<>();
+        this.usersByName = new HashMap<>();
+        for (User user : this.users) {
+            usersById.put(user.getUserId(), user);
+            // First row wins, like the scan it replaces
+            usersByName.putIfAbsent(user.getUsername(), user);
+        }
+        this.categories = Collections.unmodifiableList(new ArrayList<>(categories));
+        this.projects = projects.toArray(new Project[0]);
+        this.projectIndex = new HashMap<>();
+        for (int i = 0; i < this.projects.length; i++) {
+            projectIndex.put(this.projects[i].getProjectId(), i);
+        }
+        this.pledges = pledges.toArray(new Pledge[0]);
+        this.pledgeCount = this.pledges.length;
+    }
+
+    private DataSnapshot(DataSnapshot base, long version, Project[] projects, Pledge[] pledges, int pledgeCount) {
+        this.version = version;
+        this.users = base.users;
+        this.usersById = base.usersById;
+        this.usersByName = base.usersByName;
+        this.categories = base.categories;
+        this.projects = projects;
+        this.projectIndex = base.projectIndex;
+        this.pledges = pledges;
+        this.pledgeCount = pledgeCount;
+    }
+
+    /**
+     * Next version with one more pledge and, if projectId is set, the project's new amount
+     * Must only be called on the latest version
+     */
+    DataSnapshot withPledge(long newVersion, Pledge pledge, String projectId, double projectAmount) {
+        Pledge[] nextPledges = pledges;
+        if (pledgeCount == pledges.length) {
+            nextPledges = Arrays.copyOf(pledges, Math.max(16, pledgeCount * 2));
+        }
+        nextPledges[pledgeCount] = pledge;
+
+        Project[] nextProjects = projects;
+        Integer index = projectId != null ? projectIndex.get(projectId) : null;
+        if (index != null) {
+            nextProjects = projects.clone();
+            nextProjects[index] = copy(projects[index]);
+            nextProjects[index].setCurrentAmount(projectAmount);
+        }
+
+        return new DataSnapshot(this, newVersion, nextProjects, nextPledges, pledgeCount + 1);
+    }
+
+    private static Project copy(Project project) {
+        Project copy = new Project(project.getProjectId(), project.getName(), project.getGoalAmount(),
+                project.getDeadline(), project.getCategoryId(), project.getDescription(), project.getCreatorId());
+        copy.setCurrentAmount(project.getCurrentAmount());
+        return copy;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public User getUser(String userId) {
+        return usersById.get(userId);
+    }
+
+    public User getUserByUsername(String username) {
+        return usersByName.get(username);
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    public Category getCategory(String categoryId) {
+        for (Category category : categories) {
+            if (category.getCategoryId().equals(categoryId)) {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    public List<Project> getProjects() {
+        return Collections.unmodifiableList(Arrays.asList(projects));
+    }
+
+    public Project getProject(String projectId) {
+        Integer index = projectIndex.get(projectId);
+        return index != null ? projects[index] : null;
+    }
+
+    public List<Pledge> getPledges() {
+        return Collections.unmodifiableList(Arrays.asList(pledges).subList(0, pledgeCount));
+    }
+}
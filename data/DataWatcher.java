@@ -0,0 +1,462 @@
+package data;
+
+import models.*;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches the data directory for changes to the CSV tables
+ * Only the table that changed is reloaded, and rows appended to pledges.csv
+ * or to a pledge segment are parsed from the previous end of that file
+ * instead of re-reading everything
+ */
+public class DataWatcher {
+    private static final long DEBOUNCE_MILLIS = 200;
+    // Appended rows are read and announced this many bytes at a time
+    private static final int TAIL_CHUNK = 1 << 20;
+    // Pledges appended by this process, already known in memory, so not re-announced
+    private static final Set<String> ownPledgeIds = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger running = new AtomicInteger();
+    // Size and modification time left by this process's last write to a file, by file name
+    private static final Map<String, String> ownWrites = new java.util.concurrent.ConcurrentHashMap<>();
+
+    /**
+     * Receives change events from the watcher thread
+     */
+    public interface Listener {
+        default void usersReloaded(List<User> users) {
+        }
+
+        default void categoriesReloaded(List<Category> categories) {
+        }
+
+        default void projectsReloaded(List<Project> projects) {
+        }
+
+        default void rewardTiersReloaded(List<RewardTier> tiers) {
+        }
+
+        default void pledgesReloaded(List<Pledge> pledges) {
+        }
+
+        default void pledgesAppended(List<Pledge> pledges) {
+        }
+    }
+
+    private final Path directory;
+    private final List<Listener> listeners = new ArrayList<>();
+    private final UserDAO userDAO = new UserDAO();
+    private final CategoryDAO categoryDAO = new CategoryDAO();
+    private final ProjectDAO projectDAO = new ProjectDAO();
+    private final RewardTierDAO rewardTierDAO = new RewardTierDAO();
+    private final PledgeDAO pledgeDAO = new PledgeDAO();
+
+    // currentAmount column of projects.csv as last seen, to find hand edits
+    private Map<String, Double> csvAmounts = new HashMap<>();
+    // Read position in pledges.csv and in each segment, by path relative to the directory
+    private final Map<String, Tail> tails = new HashMap<>();
+    private final String segmentPrefix = PledgeSegmentStore.DIRECTORY + File.separator;
+    private WatchService watchService;
+    private boolean watchingSegments;
+    private Thread thread;
+
+    /**
+     * How much of a pledge file has been read, and what it looked like
+     */
+    private static class Tail {
+        // Byte offset just past the last complete line already seen
+        private long offset;
+        // Identity of the file and checksum of its content up to offset, to tell appends from rewrites
+        private Object fileKey;
+        private long check;
+    }
+
+    public DataWatcher() {
+        this(Paths.get("").toAbsolutePath());
+    }
+
+    public DataWatcher(Path directory) {
+        this.directory = directory;
+    }
+
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start watching on a background daemon thread
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        csvAmounts = projectDAO.readCsvAmounts();
+        markAllPledgesSeen();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchSegments();
+
+        thread = new Thread(this::watchLoop, "data-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        running.incrementAndGet();
+    }
+
+    /**
+     * Mark pledges this process is about to append so their echo is not published
+     */
+    static void ignoreOwnPledges(List<Pledge> pledges) {
+        if (running.get() == 0) {
+            return;
+        }
+        for (Pledge pledge : pledges) {
+            ownPledgeIds.add(pledge.getPledgeId());
+        }
+    }
+
+    /**
+     * Remember a file this process just wrote, so the change it causes is not announced
+     * Only a later write by someone else, which changes size or modification time, is reported
+     */
+    static void ignoreOwnWrite(Path file) {
+        if (running.get() == 0) {
+            return;
+        }
+        ownWrites.put(file.getFileName().toString(), signature(file));
+    }
+
+    private boolean isOwnWrite(String filename) {
+        String expected = ownWrites.get(filename);
+        return expected != null && expected.equals(signature(directory.resolve(filename)));
+    }
+
+    private static String signature(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() + "@" + attributes.lastModifiedTime().toInstant();
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+
+    /**
+     * Stop watching
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        running.decrementAndGet();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        thread = null;
+    }
+
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Set<String> changed = new LinkedHashSet<>();
+                collect(key, changed);
+
+                // Editors and writers often fire several events per save, so coalesce them
+                Thread.sleep(DEBOUNCE_MILLIS);
+                while ((key = watchService.poll()) != null) {
+                    collect(key, changed);
+                }
+
+                for (String filename : changed) {
+                    handleChange(filename);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher stopped
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) {
+        Path watched = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path) {
+                changed.add(directory.relativize(watched.resolve((Path) event.context())).toString());
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Also watch the segment directory once pledges have been split into segments
+     */
+    private void watchSegments() throws IOException {
+        Path segments = directory.resolve(PledgeSegmentStore.DIRECTORY);
+        if (watchingSegments || !Files.isDirectory(segments)) {
+            return;
+        }
+        segments.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchingSegments = true;
+        // The segments hold the pledges already known from pledges.csv
+        markAllPledgesSeen();
+    }
+
+    private void handleChange(String filename) {
+        try {
+            if (filename.equals(UserDAO.CSV_FILE)) {
+                // Password upgrades already updated the users in memory
+                if (isOwnWrite(filename)) {
+                    return;
+                }
+                List<User> users = userDAO.loadUsers();
+                UserDAO.usersReloaded(users);
+                forEachListener(l -> l.usersReloaded(users));
+            } else if (filename.equals(CategoryDAO.CSV_FILE)) {
+                List<Category> categories = categoryDAO.loadCategories();
+                forEachListener(l -> l.categoriesReloaded(categories));
+            } else if (filename.equals(ProjectDAO.AMOUNTS_FILE) || filename.equals(RewardTierDAO.QUANTITIES_FILE)) {
+                // Transaction flushes write these after every batch; the stores already hold the values
+                if (!isOwnWrite(filename)) {
+                    handleChange(filename.equals(ProjectDAO.AMOUNTS_FILE) ? ProjectDAO.CSV_FILE
+                            : RewardTierDAO.CSV_FILE);
+                }
+            } else if (filename.equals(ProjectDAO.CSV_FILE)) {
+                applyAmountEdits();
+                List<Project> projects = projectDAO.loadProjects();
+                forEachListener(l -> l.projectsReloaded(projects));
+            } else if (filename.equals(RewardTierDAO.CSV_FILE)) {
+                List<RewardTier> tiers = rewardTierDAO.loadRewardTiers();
+                forEachListener(l -> l.rewardTiersReloaded(tiers));
+            } else if (filename.equals(PledgeDAO.CSV_FILE)) {
+                handlePledgeChange(filename);
+            } else if (filename.equals(PledgeSegmentStore.DIRECTORY)) {
+                watchSegments();
+            } else if (filename.equals(segmentPrefix + PledgeSegmentStore.MANIFEST_FILE)) {
+                handleManifestChange();
+            } else if (filename.startsWith(segmentPrefix) && segmentFiles().contains(filename)) {
+                // Files the manifest does not list are ignored by readers, so by the watcher too
+                handlePledgeChange(filename);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A half-written file will be picked up again on the next event
+            System.err.println("Could not reload " + filename + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Carry currentAmount values edited by hand in projects.csv over to the amounts file,
+     * which otherwise takes precedence when projects are read
+     */
+    private void applyAmountEdits() throws IOException {
+        Map<String, Double> stored = projectDAO.readCsvAmounts();
+        Map<String, Double> edited = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : stored.entrySet()) {
+            Double before = csvAmounts.get(entry.getKey());
+            if (before != null && !before.equals(entry.getValue())) {
+                edited.put(entry.getKey(), entry.getValue());
+            }
+        }
+        csvAmounts = stored;
+        // saveProjects writes the amounts file itself
+        if (!edited.isEmpty() && !isOwnWrite(ProjectDAO.CSV_FILE)) {
+            projectDAO.applyAmountEdits(edited);
+        }
+    }
+
+    /**
+     * Parse only the tail of a pledge file when it grew by appending,
+     * otherwise fall back to a full reload
+     */
+    private void handlePledgeChange(String filename) throws IOException {
+        File file = directory.resolve(filename).toFile();
+        Tail tail = tails.computeIfAbsent(filename, f -> new Tail());
+        long length = file.length();
+
+        if (length == tail.offset) {
+            return;
+        }
+        if (length < tail.offset || !isAppend(file, tail)) {
+            reloadPledges();
+            return;
+        }
+
+        // Read in bounded chunks so a large append never needs one buffer for all of it
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] buffer = new byte[TAIL_CHUNK];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = tail.offset;
+            raf.seek(position);
+            while (position < length) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, length - position));
+                if (read < 0) {
+                    break;
+                }
+                List<String[]> records = new ArrayList<>();
+                long seen = -1;
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        line.write(buffer, start, i - start);
+                        addRecord(records, line);
+                        start = i + 1;
+                        seen = position + start;
+                    }
+                }
+                // A partial line is carried into the next chunk, or read next time
+                line.write(buffer, start, read - start);
+                position += read;
+
+                if (seen >= 0) {
+                    markPledgesSeen(file, tail, seen);
+                    announceAppended(records, filename);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the segments the readers use still include every one already read
+     */
+    private void handleManifestChange() throws IOException {
+        Set<String> listed = segmentFiles();
+        for (String filename : tails.keySet()) {
+            if (filename.startsWith(segmentPrefix) && !listed.contains(filename)) {
+                reloadPledges();
+                return;
+            }
+        }
+    }
+
+    private void addRecord(List<String[]> records, ByteArrayOutputStream line) {
+        String text = new String(line.toByteArray(), Charset.defaultCharset());
+        line.reset();
+        if (text.endsWith("\r")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        if (!text.isEmpty()) {
+            records.add(CSVUtil.parseCSVLine(text));
+        }
+    }
+
+    private void announceAppended(List<String[]> records, String filename) {
+        List<Pledge> appended = pledgeDAO.toPledges(records, "rows appended to " + filename);
+        appended.removeIf(pledge -> ownPledgeIds.remove(pledge.getPledgeId()));
+        if (!appended.isEmpty()) {
+            forEachListener(l -> l.pledgesAppended(appended));
+        }
+    }
+
+    private void reloadPledges() throws IOException {
+        List<Pledge> pledges = pledgeDAO.loadPledges();
+        markAllPledgesSeen();
+        forEachListener(l -> l.pledgesReloaded(pledges));
+    }
+
+    /**
+     * Check that the file is the one already read and the content read so far is unchanged
+     * A file not read before, such as a new segment, is all appended rows
+     */
+    private boolean isAppend(File file, Tail tail) throws IOException {
+        if (tail.offset == 0) {
+            return tail.fileKey == null || Objects.equals(fileKey(file), tail.fileKey);
+        }
+        if (!Objects.equals(fileKey(file), tail.fileKey)) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(tail.offset - 1);
+            if (raf.read() != '\n') {
+                return false;
+            }
+        }
+        return CSVUtil.checksumBefore(file, tail.offset) == tail.check;
+    }
+
+    /**
+     * Treat pledges.csv and every listed segment as read up to its end
+     */
+    private void markAllPledgesSeen() throws IOException {
+        tails.clear();
+        List<String> filenames = new ArrayList<>(segmentFiles());
+        filenames.add(PledgeDAO.CSV_FILE);
+        for (String filename : filenames) {
+            File file = directory.resolve(filename).toFile();
+            Tail tail = new Tail();
+            markPledgesSeen(file, tail, completeLength(file));
+            tails.put(filename, tail);
+        }
+    }
+
+    /**
+     * Remember how much of a pledge file has been read, and what it looked like
+     */
+    private void markPledgesSeen(File file, Tail tail, long offset) throws IOException {
+        tail.offset = offset;
+        tail.fileKey = fileKey(file);
+        tail.check = file.exists() ? CSVUtil.checksumBefore(file, offset) : 0;
+    }
+
+    /**
+     * Segment files listed in the manifest, relative to the directory
+     */
+    private Set<String> segmentFiles() throws IOException {
+        PledgeSegmentStore store = new PledgeSegmentStore(directory.resolve(PledgeSegmentStore.DIRECTORY));
+        Set<String> files = new HashSet<>();
+        if (store.exists()) {
+            for (String file : store.files(null)) {
+                files.add(directory.relativize(Paths.get(file)).toString());
+            }
+        }
+        return files;
+    }
+
+    private static Object fileKey(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Length of the file up to and including its last newline
+     */
+    private static long completeLength(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long position = raf.length();
+            while (position > 0) {
+                raf.seek(position - 1);
+                if (raf.read() == '\n') {
+                    return position;
+                }
+                position--;
+            }
+        } catch (IOException e) {
+            // Treat an unreadable file as empty, the next change reloads it fully
+        }
+        return 0;
+    }
+
+    private void forEachListener(java.util.function.Consumer<Listener> action) {
+        List<Listener> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(listeners);
+        }
+        for (Listener listener : snapshot) {
+            action.accept(listener);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Persistent number sequence that hands out values from pre-allocated blocks
+ *
+ * The file holds the first value not yet reserved. Taking a block moves it
+ * forward by the block size before any value from the block is used, so a
+ * crash can only skip values, never repeat them. Within a block, values come
+ * from memory. For that the file is written with FULL durability, including
+ * the directory entry of the rename, unless durability is NONE.
+ */
+public class IdSequence {
+    private static final int DEFAULT_BLOCK_SIZE = Integer.getInteger("crowdfund.idBlockSize", 100);
+    private static final String[] HEADERS = { "next" };
+
+    /**
+     * Highest value already in use, read once when the sequence file does not exist yet
+     */
+    public interface Seed {
+        long highest() throws IOException;
+    }
+
+    private final String filename;
+    private final int blockSize;
+    private final Seed seed;
+    private long next;
+    private long limit; // End of the reserved block; next == limit means a new block is needed
+    private boolean loaded;
+
+    public IdSequence(String filename, Seed seed) {
+        this(filename, DEFAULT_BLOCK_SIZE, seed);
+    }
+
+    public IdSequence(String filename, int blockSize, Seed seed) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.filename = filename;
+        this.blockSize = blockSize;
+        this.seed = seed;
+    }
+
+    /**
+     * Next value in the sequence; only touches the file when a block runs out
+     */
+    public synchronized long next() throws IOException {
+        if (next == limit) {
+            reserveBlock();
+        }
+        return next++;
+    }
+
+    /**
+     * First of count consecutive values, reserved with at most one file write
+     */
+    public synchronized long next(int count) throws IOException {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+        if (next == limit) {
+            reserveBlock();
+        }
+        if (limit - next < count) {
+            // Extend the current block so the range stays consecutive
+            long end = next + count + blockSize;
+            writeLimit(end);
+            limit = end;
+        }
+        long first = next;
+        next += count;
+        return first;
+    }
+
+    private void reserveBlock() throws IOException {
+        long start = loaded ? limit : readStart();
+        writeLimit(start + blockSize);
+        next = start;
+        limit = start + blockSize;
+        loaded = true;
+    }
+
+    private void writeLimit(long limit) throws IOException {
+        // A rename lost on power failure would hand out the previous block again
+        CSVUtil.Durability level = CSVUtil.getDurability() == CSVUtil.Durability.NONE ? CSVUtil.Durability.NONE
+                : CSVUtil.Durability.FULL;
+        CSVUtil.writeCSV(filename, Arrays.asList(HEADERS, new String[] { String.valueOf(limit) }), level);
+    }
+
+    private long readStart() throws IOException {
+        if (!Files.exists(Paths.get(filename))) {
+            return seed.highest() + 1;
+        }
+        List<String[]> records = CSVUtil.readCSV(filename);
+        for (String[] record : records) {
+            if (record.length >= 1 && !record[0].equals(HEADERS[0])) {
+                try {
+                    return Long.parseLong(record[0].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Corrupt sequence file " + filename + ": " + record[0]);
+                }
+            }
+        }
+        throw new IOException("Empty sequence file " + filename);
+    }
+}
@@ -0,0 +1,214 @@
+package data;
+
+import models.RewardTier;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory reward tier inventory with reserve, confirm and release
+ *
+ * Each tier has two atomic counters: the remaining quantity and the quantity
+ * still free to reserve. Claims are compare-and-set loops on the second
+ * counter, so sold-out checks never touch the files and concurrent claims
+ * on one tier can never oversell. Confirmed quantities reach the files later
+ * through the transaction log flush.
+ */
+public class InventoryService {
+    private static final InventoryService INSTANCE = new InventoryService();
+
+    /**
+     * Counters and metadata for one tier
+     */
+    private static class Stock {
+        private volatile RewardTier tier; // Metadata only, remainingQuantity is not kept current
+        private final AtomicInteger remaining;
+        private final AtomicInteger available; // remaining minus outstanding reservations
+
+        Stock(RewardTier tier, int remaining, int available) {
+            this.tier = tier;
+            this.remaining = new AtomicInteger(remaining);
+            this.available = new AtomicInteger(available);
+        }
+    }
+
+    /**
+     * One unit of a tier held for a pledge in progress
+     */
+    public class Reservation {
+        private final String tierId;
+        private final AtomicBoolean confirmed = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(String tierId) {
+            this.tierId = tierId;
+        }
+
+        public String getTierId() {
+            return tierId;
+        }
+
+        /**
+         * Turn the reservation into a sale
+         * Returns the remaining quantity after this sale
+         */
+        public int confirm() {
+            if (released.get() || !confirmed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Reservation for " + tierId + " is no longer open");
+            }
+            return stocks.get(tierId).remaining.decrementAndGet();
+        }
+
+        /**
+         * Give the unit back, also after confirm if the pledge could not be committed
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                Stock stock = stocks.get(tierId);
+                if (confirmed.get()) {
+                    stock.remaining.incrementAndGet();
+                }
+                stock.available.incrementAndGet();
+            }
+        }
+    }
+
+    private final RewardTierDAO rewardTierDAO = new RewardTierDAO();
+    private final Map<String, Stock> stocks = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public static InventoryService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Tier metadata with its current remaining quantity, or null if the tier does not exist
+     */
+    public RewardTier getTier(String tierId) throws IOException {
+        Stock stock = stock(tierId);
+        if (stock == null) {
+            return null;
+        }
+        RewardTier tier = copy(stock.tier);
+        tier.setRemainingQuantity(stock.remaining.get());
+        return tier;
+    }
+
+    /**
+     * Remaining quantity of a tier, 0 if the tier does not exist
+     */
+    public int getRemaining(String tierId) throws IOException {
+        Stock stock = stock(tierId);
+        return stock != null ? stock.remaining.get() : 0;
+    }
+
+    /**
+     * Whether every unit is sold or reserved
+     */
+    public boolean isSoldOut(String tierId) throws IOException {
+        Stock stock = stock(tierId);
+        return stock == null || stock.available.get() <= 0;
+    }
+
+    /**
+     * Hold one unit of a tier, or return null if none is left
+     */
+    public Reservation reserve(String tierId) throws IOException {
+        Stock stock = stock(tierId);
+        if (stock == null) {
+            return null;
+        }
+        while (true) {
+            int available = stock.available.get();
+            if (available <= 0) {
+                return null;
+            }
+            if (stock.available.compareAndSet(available, available - 1)) {
+                return new Reservation(tierId);
+            }
+        }
+    }
+
+    /**
+     * Overwrite remaining quantities in tiers loaded from storage with the in-memory counters
+     */
+    public void applyTo(List<RewardTier> tiers) throws IOException {
+        ensureLoaded();
+        for (RewardTier tier : tiers) {
+            Stock stock = stocks.get(tier.getTierId());
+            if (stock != null) {
+                tier.setRemainingQuantity(stock.remaining.get());
+            }
+        }
+    }
+
+    /**
+     * Pick up tiers changed outside this service
+     * New tiers are added; a changed totalQuantity shifts the counters by the same amount,
+     * so sales made here that are not yet flushed are not lost
+     */
+    public synchronized void tiersReloaded(List<RewardTier> tiers) {
+        if (!loaded) {
+            return;
+        }
+        for (RewardTier tier : tiers) {
+            Stock stock = stocks.get(tier.getTierId());
+            if (stock == null) {
+                stocks.put(tier.getTierId(), new Stock(copy(tier), tier.getRemainingQuantity(),
+                        tier.getRemainingQuantity()));
+            } else {
+                int added = tier.getTotalQuantity() - stock.tier.getTotalQuantity();
+                stock.tier = copy(tier);
+                stock.remaining.addAndGet(added);
+                stock.available.addAndGet(added);
+            }
+        }
+    }
+
+    /**
+     * Counters for a tier, or null if it is unknown
+     * Tiers created after the load arrive through tiersReloaded, from saveRewardTiers or the data watcher,
+     * so a miss does not read the files
+     */
+    private Stock stock(String tierId) throws IOException {
+        ensureLoaded();
+        return stocks.get(tierId);
+    }
+
+    /**
+     * Seed the counters from tiers loaded elsewhere; ignored once the service has loaded
+     */
+    public synchronized void preload(List<RewardTier> tiers) {
+        if (!loaded) {
+            load(tiers);
+        }
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                load(rewardTierDAO.loadRewardTiers());
+            }
+        }
+    }
+
+    private void load(List<RewardTier> tiers) {
+        for (RewardTier tier : tiers) {
+            stocks.put(tier.getTierId(), new Stock(copy(tier), tier.getRemainingQuantity(),
+                    tier.getRemainingQuantity()));
+        }
+        loaded = true;
+    }
+
+    private static RewardTier copy(RewardTier tier) {
+        RewardTier copy = new RewardTier(tier.getTierId(), tier.getProjectId(), tier.getName(),
+                tier.getMinimumAmount(), tier.getTotalQuantity(), tier.getDescription());
+        copy.setRemainingQuantity(tier.getRemainingQuantity());
+        return copy;
+    }
+}
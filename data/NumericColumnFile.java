@@ -0,0 +1,171 @@
+package data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Fixed-width record file holding one mutable numeric column keyed by ID
+ *
+ * Each record is a space padded ASCII key followed by an 8-byte value, so a
+ * single value is changed with one positional write instead of rewriting the
+ * CSV table. Text columns stay in the CSV file; values found here override
+ * the matching CSV column.
+ */
+public class NumericColumnFile {
+    private static final int MAGIC = 0x43464E43; // "CFNC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int KEY_SIZE = 32;
+    private static final int RECORD_SIZE = KEY_SIZE + 8;
+    private static final Map<Path, NumericColumnFile> OPEN_FILES = new HashMap<>();
+
+    private final Path path;
+    private Map<String, Integer> slots; // key -> record index, built on first use
+
+    private NumericColumnFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Get the shared instance for a file so every DAO sees the same slot index
+     */
+    public static synchronized NumericColumnFile open(String filename) {
+        Path path = Paths.get(filename).toAbsolutePath();
+        return OPEN_FILES.computeIfAbsent(path, NumericColumnFile::new);
+    }
+
+    /**
+     * Read every stored value
+     */
+    public synchronized Map<String, Long> readAll() throws IOException {
+        Map<String, Long> values = new HashMap<>();
+        if (!Files.exists(path)) {
+            slots = new HashMap<>();
+            return values;
+        }
+
+        Map<String, Integer> index = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            long position = checkHeader(channel);
+            int slot = 0;
+            int read;
+
+            // A trailing partial record from an interrupted append is ignored and later overwritten
+            while ((read = channel.read(buffer, position)) > 0) {
+                position += read;
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    String key = readKey(buffer);
+                    values.put(key, buffer.getLong());
+                    index.put(key, slot++);
+                }
+                buffer.compact();
+            }
+        }
+
+        slots = index;
+        return values;
+    }
+
+    public Map<String, Double> readAllDoubles() throws IOException {
+        Map<String, Double> values = new HashMap<>();
+        for (Map.Entry<String, Long> entry : readAll().entrySet()) {
+            values.put(entry.getKey(), Double.longBitsToDouble(entry.getValue()));
+        }
+        return values;
+    }
+
+    /**
+     * Set one value in place, appending a record if the key is new
+     */
+    public synchronized void write(String key, long value) throws IOException {
+        writeAll(Collections.singletonMap(key, value));
+    }
+
+    public void writeDouble(String key, double value) throws IOException {
+        write(key, Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Set several values with one positional write each and a single force
+     */
+    public synchronized void writeAll(Map<String, Long> values) throws IOException {
+        if (values.isEmpty()) {
+            return;
+        }
+        if (slots == null) {
+            readAll();
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                channel.write(header, 0);
+            } else {
+                checkHeader(channel);
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            for (Map.Entry<String, Long> entry : values.entrySet()) {
+                Integer slot = slots.get(entry.getKey());
+                if (slot == null) {
+                    slot = slots.size();
+                    slots.put(entry.getKey(), slot);
+                }
+
+                record.clear();
+                writeKey(record, entry.getKey());
+                record.putLong(entry.getValue());
+                record.flip();
+                channel.write(record, HEADER_SIZE + (long) slot * RECORD_SIZE);
+            }
+
+            if (CSVUtil.getDurability() != CSVUtil.Durability.NONE) {
+                channel.force(false);
+            }
+        }
+        DataWatcher.ignoreOwnWrite(path);
+    }
+
+    public void writeAllDoubles(Map<String, Double> values) throws IOException {
+        Map<String, Long> bits = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : values.entrySet()) {
+            bits.put(entry.getKey(), Double.doubleToLongBits(entry.getValue()));
+        }
+        writeAll(bits);
+    }
+
+    private long checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Unrecognized numeric column file: " + path.getFileName());
+        }
+        return HEADER_SIZE;
+    }
+
+    private static String readKey(ByteBuffer buffer) {
+        byte[] key = new byte[KEY_SIZE];
+        buffer.get(key);
+        return new String(key, StandardCharsets.US_ASCII).trim();
+    }
+
+    private static void writeKey(ByteBuffer buffer, String key) throws IOException {
+        byte[] bytes = key.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > KEY_SIZE) {
+            throw new IOException("Key too long for numeric column file: " + key);
+        }
+        buffer.put(bytes);
+        for (int i = bytes.length; i < KEY_SIZE; i++) {
+            buffer.put((byte) ' ');
+        }
+    }
+}
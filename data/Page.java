@@ -0,0 +1,58 @@
+package data;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One page of query results
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final int offset;
+    private final boolean hasMore;
+
+    public Page(List<T> items, int offset, boolean hasMore) {
+        this.items = Collections.unmodifiableList(items);
+        this.offset = offset;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Take one page from a stream, reading at most one item past the page
+     * The stream is closed afterwards
+     */
+    public static <T> Page<T> of(Stream<T> stream, int offset, int limit) {
+        try (Stream<T> source = stream) {
+            List<T> items = source.skip(offset).limit(limit + 1L).collect(Collectors.toCollection(ArrayList::new));
+            boolean hasMore = items.size() > limit;
+            if (hasMore) {
+                items.remove(limit);
+            }
+            return new Page<>(items, offset, hasMore);
+        }
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Offset of the page after this one
+     */
+    public int getNextOffset() {
+        return offset + items.size();
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public boolean hasPrevious() {
+        return offset > 0;
+    }
+}
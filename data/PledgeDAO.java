@@ -4,94 +4,411 @@ import models.Pledge;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object for Pledge model
  */
 public class PledgeDAO {
-    private static final String CSV_FILE = "pledges.csv";
-    private static final String[] HEADERS = { "pledgeId", "userId", "projectId", "pledgeTime",
+    static final String CSV_FILE = "pledges.csv";
+    static final String[] HEADERS = { "pledgeId", "userId", "projectId", "pledgeTime",
             "amount", "rewardTierId", "status", "rejectionReason" };
+    // Set to move pledges.csv into monthly segment files on first use
+    private static final boolean PARTITION_PLEDGES = Boolean.getBoolean("crowdfund.partitionPledges");
+
+    // Key columns that queries compare before a row is decoded
+    private static final int USER_COLUMN = 1;
+    private static final int PROJECT_COLUMN = 2;
+    private static final int STATUS_COLUMN = 6;
+
+    static final String SEQUENCE_FILE = "pledge_ids.csv";
+    private static final IdSequence PLEDGE_IDS = new IdSequence(SEQUENCE_FILE, PledgeDAO::highestPledgeNumber);
+
+    private final PledgeSegmentStore segments = new PledgeSegmentStore();
+
+    /**
+     * Allocate a new pledge ID, unique across restarts
+     */
+    public String nextPledgeId() throws IOException {
+        return "P" + String.format("%06d", PLEDGE_IDS.next());
+    }
+
+    /**
+     * Allocate count new pledge IDs at once, for bulk loads
+     */
+    public List<String> nextPledgeIds(int count) throws IOException {
+        long first = PLEDGE_IDS.next(count);
+        List<String> ids = new ArrayList<>(count);
+        for (long i = 0; i < count; i++) {
+            ids.add("P" + String.format("%06d", first + i));
+        }
+        return ids;
+    }
+
+    /**
+     * Highest numeric pledge ID in storage; only scanned once, to start the sequence
+     */
+    private static long highestPledgeNumber() throws IOException {
+        long[] highest = { 0 };
+        new PledgeDAO().forEachPledge(pledge -> {
+            String id = pledge.getPledgeId();
+            if (id != null && id.startsWith("P")) {
+                try {
+                    highest[0] = Math.max(highest[0], Long.parseLong(id.substring(1)));
+                } catch (NumberFormatException e) {
+                    // Not a generated ID
+                }
+            }
+        });
+        return highest[0];
+    }
 
     public List<Pledge> loadPledges() throws IOException {
+        return withPending(this::readPledges);
+    }
+
+    /**
+     * Read stored pledges, without transactions that are still pending
+     */
+    List<Pledge> readPledges() throws IOException {
+        if (usesSegments()) {
+            return segments.loadAll();
+        }
+        return toPledges(CSVUtil.readCSV(CSV_FILE));
+    }
+
+    /**
+     * Stream all pledges, including pending ones, without materializing the table
+     */
+    public void forEachPledge(Consumer<Pledge> action) throws IOException {
+        TransactionLog log = TransactionLog.getInstance();
+        synchronized (log) {
+            if (usesSegments()) {
+                segments.forEach(action);
+            } else {
+                forEachPledge(CSV_FILE, action);
+            }
+
+            List<Pledge> pending = new ArrayList<>();
+            log.overlayPledges(pending);
+            pending.forEach(action);
+        }
+    }
+
+    /**
+     * Lazily stream all pledges, including pending ones; close the stream when done
+     */
+    public Stream<Pledge> streamPledges() throws IOException {
+        return streamWhere(-1, null);
+    }
+
+    public Stream<Pledge> streamByProject(String projectId) throws IOException {
+        return streamWhere(PROJECT_COLUMN, projectId);
+    }
+
+    public Stream<Pledge> streamByUser(String userId) throws IOException {
+        return streamWhere(USER_COLUMN, userId);
+    }
+
+    public Stream<Pledge> streamRejectedPledges() throws IOException {
+        return streamWhere(STATUS_COLUMN, Pledge.PledgeStatus.REJECTED.name());
+    }
+
+    /**
+     * Stored pledges whose column equals value (column -1 for all), followed by matching pending ones
+     */
+    private Stream<Pledge> streamWhere(int column, String value) throws IOException {
+        List<Pledge> pending = new ArrayList<>();
+        TransactionLog.getInstance().overlayPledges(pending);
+        pending.removeIf(pledge -> column >= 0 && !toRecord(pledge)[column].equals(value));
+        Set<String> pendingIds = new HashSet<>();
+        for (Pledge pledge : pending) {
+            pendingIds.add(pledge.getPledgeId());
+        }
+
+        Stream<Pledge> stored = storedFiles(column, value).stream().flatMap(file -> {
+            try {
+                return CSVUtil.streamRecordsWhere(file, column, value)
+                        .map(PledgeDAO::toStoredPledge)
+                        .filter(Objects::nonNull);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        });
+        // A flush during the stream can append pending pledges to storage as well
+        return Stream.concat(stored.filter(p -> !pendingIds.contains(p.getPledgeId())), pending.stream());
+    }
+
+    /**
+     * Read stored pledges whose column equals value, decoding only the matching rows
+     */
+    private List<Pledge> readWhere(int column, String value) throws IOException {
+        List<Pledge> pledges = new ArrayList<>();
+        for (String file : storedFiles(column, value)) {
+            CSVUtil.forEachRecordWhere(file, column, value, record -> {
+                Pledge pledge = toStoredPledge(record);
+                if (pledge != null) {
+                    pledges.add(pledge);
+                }
+            });
+        }
+        return pledges;
+    }
+
+    /**
+     * Files that can hold matching pledges; segments are pruned on the project column
+     */
+    private List<String> storedFiles(int column, String value) throws IOException {
+        if (usesSegments()) {
+            return segments.files(column == PROJECT_COLUMN ? value : null);
+        }
+        return Collections.singletonList(CSV_FILE);
+    }
+
+    /**
+     * Pledge for a data row, or null for the header or an unparsable row
+     * Filtered reads do not know where a row sits, so an unparsable one is reported by its ID
+     */
+    static Pledge toStoredPledge(String[] record) {
+        if (record.length < 8 || isHeader(record)) {
+            return null;
+        }
+        try {
+            return toPledge(record);
+        } catch (RuntimeException e) {
+            System.err.println("Skipping unparsable pledge " + record[0] + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    static void forEachPledge(String filename, Consumer<Pledge> action) throws IOException {
+        long[] line = { 0 };
+        // Held back until the next row shows it was not the last line
+        String[] unreported = { null };
+        CSVUtil.forEachRecord(filename, record -> {
+            line[0]++;
+            if (isBlank(record)) {
+                return;
+            }
+            if (unreported[0] != null) {
+                System.err.println(unreported[0]);
+                unreported[0] = null;
+            }
+            if (isHeader(record)) {
+                return;
+            }
+            Pledge pledge;
+            try {
+                pledge = toPledge(record);
+            } catch (RuntimeException e) {
+                unreported[0] = unparsable(filename, line[0], e);
+                return;
+            }
+            action.accept(pledge);
+        });
+    }
+
+    /**
+     * Whether an unterminated last line is a whole row rather than one torn by an interrupted append
+     */
+    static boolean isComplete(String[] record) {
+        if (isHeader(record)) {
+            return true;
+        }
+        try {
+            toPledge(record);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBlank(String[] record) {
+        return record.length == 1 && record[0].trim().isEmpty();
+    }
+
+    private static String unparsable(String filename, long line, RuntimeException e) {
+        return "Skipping unparsable pledge on line " + line + " of " + filename + ": " + e;
+    }
+
+    /**
+     * Whether pledges live in monthly segments instead of pledges.csv
+     */
+    boolean usesSegments() throws IOException {
+        if (PARTITION_PLEDGES && !segments.exists()) {
+            synchronized (PledgeDAO.class) {
+                if (!segments.exists()) {
+                    segments.create(toPledges(CSVUtil.readCSV(CSV_FILE)));
+                }
+            }
+        }
+        return segments.exists();
+    }
+
+    /**
+     * Run a read while no transaction flush is in progress and add the pending pledges
+     */
+    private List<Pledge> withPending(PledgeReader reader) throws IOException {
+        TransactionLog log = TransactionLog.getInstance();
+        synchronized (log) {
+            List<Pledge> pledges = reader.read();
+            log.overlayPledges(pledges);
+            return pledges;
+        }
+    }
+
+    private interface PledgeReader {
+        List<Pledge> read() throws IOException;
+    }
+
+    /**
+     * Convert raw CSV records to pledges, skipping the header row if present
+     * Only the last line may be unparsable without a report: an interrupted append leaves a torn
+     * row there, and the transaction log still has the pledge
+     */
+    List<Pledge> toPledges(List<String[]> records) {
+        return toPledges(records, CSV_FILE);
+    }
+
+    List<Pledge> toPledges(List<String[]> records, String source) {
         List<Pledge> pledges = new ArrayList<>();
-        List<String[]> records = CSVUtil.readCSV(CSV_FILE);
 
         for (int i = (records.size() > 0 && isHeader(records.get(0)) ? 1 : 0); i < records.size(); i++) {
             String[] record = records.get(i);
-            if (record.length >= 8) {
-                Pledge pledge = new Pledge();
-                pledge.setPledgeId(record[0]);
-                pledge.setUserId(record[1]);
-                pledge.setProjectId(record[2]);
-                pledge.setPledgeTime(LocalDateTime.parse(record[3], Pledge.DATETIME_FORMAT));
-                pledge.setAmount(Double.parseDouble(record[4]));
-                pledge.setRewardTierId(record[5].isEmpty() ? null : record[5]);
-                pledge.setStatus(Pledge.PledgeStatus.valueOf(record[6]));
-                pledge.setRejectionReason(record[7].isEmpty() ? null : record[7]);
-                pledges.add(pledge);
+            if (isBlank(record)) {
+                continue;
+            }
+            try {
+                pledges.add(toPledge(record));
+            } catch (RuntimeException e) {
+                if (i < records.size() - 1) {
+                    System.err.println(unparsable(source, i + 1, e));
+                }
             }
         }
 
         return pledges;
     }
 
+    static Pledge toPledge(String[] record) {
+        Pledge pledge = new Pledge();
+        pledge.setPledgeId(record[0]);
+        pledge.setUserId(record[1]);
+        pledge.setProjectId(record[2]);
+        pledge.setPledgeTime(LocalDateTime.parse(record[3], Pledge.DATETIME_FORMAT));
+        pledge.setAmount(Double.parseDouble(record[4]));
+        pledge.setRewardTierId(record[5].isEmpty() ? null : record[5]);
+        pledge.setStatus(Pledge.PledgeStatus.valueOf(record[6]));
+        pledge.setRejectionReason(record[7].isEmpty() ? null : record[7]);
+        return pledge;
+    }
+
+    static String[] toRecord(Pledge pledge) {
+        return new String[] {
+                pledge.getPledgeId(),
+                pledge.getUserId(),
+                pledge.getProjectId(),
+                pledge.getPledgeTime().format(Pledge.DATETIME_FORMAT),
+                String.valueOf(pledge.getAmount()),
+                pledge.getRewardTierId() != null ? pledge.getRewardTierId() : "",
+                pledge.getStatus().toString(),
+                pledge.getRejectionReason() != null ? pledge.getRejectionReason() : ""
+        };
+    }
+
     public void savePledges(List<Pledge> pledges) throws IOException {
+        if (usesSegments()) {
+            segments.replaceAll(pledges);
+            SnapshotStore.getInstance().invalidate();
+            return;
+        }
+
         List<String[]> records = new ArrayList<>();
         records.add(HEADERS);
 
         for (Pledge pledge : pledges) {
-            String[] record = {
-                    pledge.getPledgeId(),
-                    pledge.getUserId(),
-                    pledge.getProjectId(),
-                    pledge.getPledgeTime().format(Pledge.DATETIME_FORMAT),
-                    String.valueOf(pledge.getAmount()),
-                    pledge.getRewardTierId() != null ? pledge.getRewardTierId() : "",
-                    pledge.getStatus().toString(),
-                    pledge.getRejectionReason() != null ? pledge.getRejectionReason() : ""
-            };
-            records.add(record);
+            records.add(toRecord(pledge));
         }
 
         CSVUtil.writeCSV(CSV_FILE, records);
+        SnapshotStore.getInstance().invalidate();
     }
 
     public void addPledge(Pledge pledge) throws IOException {
-        List<Pledge> pledges = loadPledges();
-        pledges.add(pledge);
-        savePledges(pledges);
+        appendPledges(Collections.singletonList(pledge));
+        SnapshotStore.getInstance().pledgeAdded(pledge);
+    }
+
+    /**
+     * Append pledges to storage without rewriting existing rows
+     */
+    public void appendPledges(List<Pledge> pledges) throws IOException {
+        DataWatcher.ignoreOwnPledges(pledges);
+        if (usesSegments()) {
+            segments.append(pledges);
+            return;
+        }
+
+        List<String[]> records = new ArrayList<>();
+        for (Pledge pledge : pledges) {
+            records.add(toRecord(pledge));
+        }
+        CSVUtil.appendCSV(CSV_FILE, HEADERS, records, PledgeDAO::isComplete);
     }
 
     public List<Pledge> findByProject(String projectId) throws IOException {
-        List<Pledge> pledges = loadPledges();
+        List<Pledge> pledges = withPending(() -> readWhere(PROJECT_COLUMN, projectId));
         return pledges.stream()
                 .filter(p -> p.getProjectId().equals(projectId))
                 .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
     }
 
+    /**
+     * Find pledges made between two times (inclusive)
+     * With segmented storage only the months in range are read
+     */
+    public List<Pledge> findBetween(LocalDateTime from, LocalDateTime to) throws IOException {
+        List<Pledge> pledges = usesSegments() ? withPending(() -> segments.findBetween(from, to)) : loadPledges();
+        return pledges.stream()
+                .filter(p -> !p.getPledgeTime().isBefore(from) && !p.getPledgeTime().isAfter(to))
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    }
+
     public List<Pledge> findByUser(String userId) throws IOException {
-        List<Pledge> pledges = loadPledges();
+        List<Pledge> pledges = withPending(() -> readWhere(USER_COLUMN, userId));
         return pledges.stream()
                 .filter(p -> p.getUserId().equals(userId))
                 .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
     }
 
     public List<Pledge> findSuccessfulPledges() throws IOException {
-        List<Pledge> pledges = loadPledges();
+        List<Pledge> pledges = withPending(() -> readWhere(STATUS_COLUMN, Pledge.PledgeStatus.SUCCESS.name()));
         return pledges.stream()
                 .filter(Pledge::isSuccessful)
                 .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
     }
 
     public List<Pledge> findRejectedPledges() throws IOException {
-        List<Pledge> pledges = loadPledges();
+        List<Pledge> pledges = withPending(() -> readWhere(STATUS_COLUMN, Pledge.PledgeStatus.REJECTED.name()));
         return pledges.stream()
                 .filter(Pledge::isRejected)
                 .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
     }
 
-    private boolean isHeader(String[] record) {
+    public Page<Pledge> findByProject(String projectId, int offset, int limit) throws IOException {
+        return Page.of(streamByProject(projectId), offset, limit);
+    }
+
+    public Page<Pledge> findByUser(String userId, int offset, int limit) throws IOException {
+        return Page.of(streamByUser(userId), offset, limit);
+    }
+
+    public Page<Pledge> findRejectedPledges(int offset, int limit) throws IOException {
+        return Page.of(streamRejectedPledges(), offset, limit);
+    }
+
+    private static boolean isHeader(String[] record) {
         return record.length >= 8 && record[0].equals("pledgeId");
     }
 }
\ No newline at end of file
@@ -0,0 +1,234 @@
+package data;
+
+import models.Pledge;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Pledge storage split into one segment file per pledgeTime month
+ *
+ * A small manifest records each segment's time range, row count and the
+ * projects it contains, so project and time range queries only open the
+ * segments that can match.
+ */
+public class PledgeSegmentStore {
+    static final String DIRECTORY = "pledges";
+    static final String MANIFEST_FILE = "manifest.csv";
+    private static final String[] MANIFEST_HEADERS = { "segment", "minTime", "maxTime", "count", "projectIds" };
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    /**
+     * Manifest entry for one segment file
+     */
+    static class Segment {
+        private final String file;
+        private LocalDateTime minTime;
+        private LocalDateTime maxTime;
+        private int count;
+        private final Set<String> projectIds = new TreeSet<>();
+
+        Segment(String file) {
+            this.file = file;
+        }
+
+        void include(Pledge pledge) {
+            LocalDateTime time = pledge.getPledgeTime();
+            if (minTime == null || time.isBefore(minTime)) {
+                minTime = time;
+            }
+            if (maxTime == null || time.isAfter(maxTime)) {
+                maxTime = time;
+            }
+            count++;
+            projectIds.add(pledge.getProjectId());
+        }
+
+        boolean overlaps(LocalDateTime from, LocalDateTime to) {
+            return count > 0 && !maxTime.isBefore(from) && !minTime.isAfter(to);
+        }
+    }
+
+    private final Path directory;
+
+    public PledgeSegmentStore() {
+        this(Paths.get(DIRECTORY));
+    }
+
+    public PledgeSegmentStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Check whether pledges have been partitioned into segments
+     */
+    public boolean exists() {
+        return Files.exists(directory.resolve(MANIFEST_FILE));
+    }
+
+    /**
+     * Split an existing pledge list into segments and write the manifest
+     */
+    public synchronized void create(List<Pledge> pledges) throws IOException {
+        Files.createDirectories(directory);
+        replaceAll(pledges);
+    }
+
+    /**
+     * Read every segment in time order
+     */
+    public synchronized List<Pledge> loadAll() throws IOException {
+        List<Pledge> pledges = new ArrayList<>();
+        for (Segment segment : readManifest().values()) {
+            pledges.addAll(readSegment(segment));
+        }
+        return pledges;
+    }
+
+    /**
+     * Stream every segment in time order
+     */
+    public synchronized void forEach(java.util.function.Consumer<Pledge> action) throws IOException {
+        for (Segment segment : readManifest().values()) {
+            PledgeDAO.forEachPledge(directory.resolve(segment.file).toString(), action);
+        }
+    }
+
+    /**
+     * Segment file paths in time order; only those holding projectId unless it is null
+     */
+    public synchronized List<String> files(String projectId) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (Segment segment : readManifest().values()) {
+            if (projectId == null || segment.projectIds.contains(projectId)) {
+                files.add(directory.resolve(segment.file).toString());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Read only the segments whose time range overlaps [from, to]
+     */
+    public synchronized List<Pledge> findBetween(LocalDateTime from, LocalDateTime to) throws IOException {
+        List<Pledge> pledges = new ArrayList<>();
+        for (Segment segment : readManifest().values()) {
+            if (segment.overlaps(from, to)) {
+                for (Pledge pledge : readSegment(segment)) {
+                    LocalDateTime time = pledge.getPledgeTime();
+                    if (!time.isBefore(from) && !time.isAfter(to)) {
+                        pledges.add(pledge);
+                    }
+                }
+            }
+        }
+        return pledges;
+    }
+
+    /**
+     * Append pledges to their month segments
+     */
+    public synchronized void append(List<Pledge> pledges) throws IOException {
+        if (pledges.isEmpty()) {
+            return;
+        }
+        Map<String, Segment> manifest = readManifest();
+        Map<String, List<String[]>> rows = new TreeMap<>();
+        for (Pledge pledge : pledges) {
+            String file = segmentFile(pledge);
+            manifest.computeIfAbsent(file, Segment::new).include(pledge);
+            rows.computeIfAbsent(file, f -> new ArrayList<>()).add(PledgeDAO.toRecord(pledge));
+        }
+
+        // The manifest is widened first; if we crash before the rows land it only over-reports
+        writeManifest(manifest);
+        // Segments already appended are cut back if a later one fails, so a retry cannot duplicate rows
+        Map<String, Long> appended = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, List<String[]>> entry : rows.entrySet()) {
+                String file = directory.resolve(entry.getKey()).toString();
+                appended.put(file, new File(file).length());
+                CSVUtil.appendCSV(file, PledgeDAO.HEADERS, entry.getValue(), PledgeDAO::isComplete);
+            }
+        } catch (IOException e) {
+            for (Map.Entry<String, Long> entry : appended.entrySet()) {
+                CSVUtil.truncate(entry.getKey(), entry.getValue());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Rewrite all segments from a complete pledge list
+     */
+    public synchronized void replaceAll(List<Pledge> pledges) throws IOException {
+        Map<String, Segment> manifest = new TreeMap<>();
+        Map<String, List<String[]>> rows = new TreeMap<>();
+        for (Pledge pledge : pledges) {
+            String file = segmentFile(pledge);
+            manifest.computeIfAbsent(file, Segment::new).include(pledge);
+            rows.computeIfAbsent(file, f -> {
+                List<String[]> records = new ArrayList<>();
+                records.add(PledgeDAO.HEADERS);
+                return records;
+            }).add(PledgeDAO.toRecord(pledge));
+        }
+
+        for (Map.Entry<String, List<String[]>> entry : rows.entrySet()) {
+            CSVUtil.writeCSV(directory.resolve(entry.getKey()).toString(), entry.getValue());
+        }
+        // Segments no longer listed are simply ignored by readers
+        writeManifest(manifest);
+    }
+
+    private List<Pledge> readSegment(Segment segment) throws IOException {
+        String file = directory.resolve(segment.file).toString();
+        return new PledgeDAO().toPledges(CSVUtil.readCSV(file), file);
+    }
+
+    private Map<String, Segment> readManifest() throws IOException {
+        Map<String, Segment> manifest = new TreeMap<>();
+        List<String[]> records = CSVUtil.readCSV(directory.resolve(MANIFEST_FILE).toString());
+
+        for (int i = (records.size() > 0 && records.get(0)[0].equals("segment") ? 1 : 0); i < records.size(); i++) {
+            String[] record = records.get(i);
+            if (record.length >= 5) {
+                Segment segment = new Segment(record[0]);
+                segment.minTime = LocalDateTime.parse(record[1], Pledge.DATETIME_FORMAT);
+                segment.maxTime = LocalDateTime.parse(record[2], Pledge.DATETIME_FORMAT);
+                segment.count = Integer.parseInt(record[3]);
+                if (!record[4].isEmpty()) {
+                    segment.projectIds.addAll(Arrays.asList(record[4].split(";")));
+                }
+                manifest.put(segment.file, segment);
+            }
+        }
+
+        return manifest;
+    }
+
+    private void writeManifest(Map<String, Segment> manifest) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        records.add(MANIFEST_HEADERS);
+
+        for (Segment segment : manifest.values()) {
+            String[] record = {
+                    segment.file,
+                    segment.minTime.format(Pledge.DATETIME_FORMAT),
+                    segment.maxTime.format(Pledge.DATETIME_FORMAT),
+                    String.valueOf(segment.count),
+                    String.join(";", segment.projectIds)
+            };
+            records.add(record);
+        }
+
+        CSVUtil.writeCSV(directory.resolve(MANIFEST_FILE).toString(), records);
+    }
+
+    private static String segmentFile(Pledge pledge) {
+        return "pledges-" + pledge.getPledgeTime().format(MONTH_FORMAT) + ".csv";
+    }
+}
@@ -2,40 +2,136 @@ package data;
 
 import models.Project;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object for Project model
  */
 public class ProjectDAO {
-    private static final String CSV_FILE = "projects.csv";
+    static final String CSV_FILE = "projects.csv";
     private static final String[] HEADERS = { "projectId", "name", "goalAmount", "deadline",
             "currentAmount", "categoryId", "description", "creatorId" };
+    // currentAmount is kept in a fixed-width file so a pledge updates it in place
+    static final String AMOUNTS_FILE = "project_amounts.dat";
 
     public List<Project> loadProjects() throws IOException {
+        TransactionLog log = TransactionLog.getInstance();
+        synchronized (log) {
+            List<Project> projects = readProjects();
+            log.overlayProjects(projects);
+            return projects;
+        }
+    }
+
+    /**
+     * Read projects.csv as stored, without transactions that are still pending
+     */
+    List<Project> readProjects() throws IOException {
         List<Project> projects = new ArrayList<>();
         List<String[]> records = CSVUtil.readCSV(CSV_FILE);
 
         for (int i = (records.size() > 0 && isHeader(records.get(0)) ? 1 : 0); i < records.size(); i++) {
             String[] record = records.get(i);
             if (record.length >= 8) {
-                Project project = new Project();
-                project.setProjectId(record[0]);
-                project.setName(record[1]);
-                project.setGoalAmount(Double.parseDouble(record[2]));
-                project.setDeadline(LocalDate.parse(record[3], Project.DATE_FORMAT));
-                project.setCurrentAmount(Double.parseDouble(record[4]));
-                project.setCategoryId(record[5]);
-                project.setDescription(record[6]);
-                project.setCreatorId(record[7]);
-                projects.add(project);
+                projects.add(toProject(record));
+            }
+        }
+
+        Map<String, Double> amounts = NumericColumnFile.open(AMOUNTS_FILE).readAllDoubles();
+        for (Project project : projects) {
+            Double amount = amounts.get(project.getProjectId());
+            if (amount != null) {
+                project.setCurrentAmount(amount);
             }
         }
 
         return projects;
     }
 
+    /**
+     * currentAmount column of projects.csv as stored, which only saveProjects and hand edits change
+     */
+    Map<String, Double> readCsvAmounts() throws IOException {
+        Map<String, Double> amounts = new HashMap<>();
+        for (String[] record : CSVUtil.readCSV(CSV_FILE)) {
+            if (record.length >= 8 && !isHeader(record)) {
+                try {
+                    amounts.put(record[0], Double.parseDouble(record[4]));
+                } catch (NumberFormatException e) {
+                    // Not a usable edit, the amounts file keeps its value
+                }
+            }
+        }
+        return amounts;
+    }
+
+    /**
+     * Make amounts edited in projects.csv the current amounts
+     * Pending transactions are flushed first so their older totals do not overwrite the edit
+     */
+    void applyAmountEdits(Map<String, Double> amounts) throws IOException {
+        TransactionLog log = TransactionLog.getInstance();
+        synchronized (log) {
+            log.flush();
+            updateCurrentAmounts(amounts);
+            SnapshotStore.getInstance().invalidate();
+        }
+    }
+
+    /**
+     * Lazily stream all projects, including pending amounts; close the stream when done
+     */
+    public Stream<Project> streamProjects() throws IOException {
+        Map<String, Double> amounts;
+        TransactionLog log = TransactionLog.getInstance();
+        synchronized (log) {
+            amounts = NumericColumnFile.open(AMOUNTS_FILE).readAllDoubles();
+            amounts.putAll(log.pendingProjectAmounts());
+        }
+
+        return CSVUtil.streamRecords(CSV_FILE)
+                .filter(record -> record.length >= 8 && !isHeader(record))
+                .map(record -> {
+                    Project project = toProject(record);
+                    Double amount = amounts.get(project.getProjectId());
+                    if (amount != null) {
+                        project.setCurrentAmount(amount);
+                    }
+                    return project;
+                });
+    }
+
+    public Stream<Project> streamByCategory(String categoryId) throws IOException {
+        return streamProjects().filter(p -> p.getCategoryId().equals(categoryId));
+    }
+
+    /**
+     * Load one page of projects in file order
+     */
+    public Page<Project> loadProjects(int offset, int limit) throws IOException {
+        return Page.of(streamProjects(), offset, limit);
+    }
+
+    public Page<Project> findByCategory(String categoryId, int offset, int limit) throws IOException {
+        return Page.of(streamByCategory(categoryId), offset, limit);
+    }
+
+    private static Project toProject(String[] record) {
+        Project project = new Project();
+        project.setProjectId(record[0]);
+        project.setName(record[1]);
+        project.setGoalAmount(Double.parseDouble(record[2]));
+        project.setDeadline(LocalDate.parse(record[3], Project.DATE_FORMAT));
+        project.setCurrentAmount(Double.parseDouble(record[4]));
+        project.setCategoryId(record[5]);
+        project.setDescription(record[6]);
+        project.setCreatorId(record[7]);
+        return project;
+    }
+
     public void saveProjects(List<Project> projects) throws IOException {
         List<String[]> records = new ArrayList<>();
         records.add(HEADERS);
@@ -55,6 +151,14 @@ public class ProjectDAO {
         }
 
         CSVUtil.writeCSV(CSV_FILE, records);
+        DataWatcher.ignoreOwnWrite(Paths.get(CSV_FILE));
+
+        Map<String, Double> amounts = new LinkedHashMap<>();
+        for (Project project : projects) {
+            amounts.put(project.getProjectId(), project.getCurrentAmount());
+        }
+        NumericColumnFile.open(AMOUNTS_FILE).writeAllDoubles(amounts);
+        SnapshotStore.getInstance().invalidate();
     }
 
     public Project findById(String projectId) throws IOException {
@@ -83,6 +187,20 @@ public class ProjectDAO {
         saveProjects(projects);
     }
 
+    /**
+     * Update only the current amount of a project with a positional write
+     */
+    public void updateCurrentAmount(String projectId, double currentAmount) throws IOException {
+        NumericColumnFile.open(AMOUNTS_FILE).writeDouble(projectId, currentAmount);
+    }
+
+    /**
+     * Update the current amounts of several projects with positional writes
+     */
+    public void updateCurrentAmounts(Map<String, Double> amounts) throws IOException {
+        NumericColumnFile.open(AMOUNTS_FILE).writeAllDoubles(amounts);
+    }
+
     private boolean isHeader(String[] record) {
         return record.length >= 8 && record[0].equals("projectId");
     }
@@ -0,0 +1,110 @@
+package data;
+
+import models.Pledge;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores rejected pledge attempts in the background, in batches
+ *
+ * A rejection only offers the pledge to a bounded queue and returns; a
+ * background thread gives the queued pledges IDs and appends them to pledge
+ * storage in one write per batch. When the queue is full new rejections are
+ * dropped and counted rather than slowing the caller down. Rejections still
+ * queued at exit are written by a shutdown hook.
+ */
+public class RejectedPledgeWriter {
+    private static final int QUEUE_CAPACITY = Integer.getInteger("crowdfund.rejectedQueueCapacity", 10_000);
+    private static final int BATCH_SIZE = Integer.getInteger("crowdfund.rejectedBatchSize", 500);
+    private static final long FLUSH_DELAY_MILLIS = Long.getLong("crowdfund.rejectedFlushMillis", 1000);
+    private static final RejectedPledgeWriter INSTANCE = new RejectedPledgeWriter();
+
+    private final BlockingQueue<Pledge> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ScheduledExecutorService writer;
+    private final PledgeDAO pledgeDAO = new PledgeDAO();
+
+    private RejectedPledgeWriter() {
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rejected-pledge-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "rejected-pledges-on-exit"));
+    }
+
+    public static RejectedPledgeWriter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queue a rejected pledge for storage; never blocks
+     * Returns false if the queue was full and the pledge was dropped
+     */
+    public boolean submit(Pledge pledge) {
+        if (!queue.offer(pledge)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (queue.size() % BATCH_SIZE == 0) {
+            // A full batch is waiting, write it now instead of at the end of the delay
+            writer.execute(this::flushQuietly);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            writer.schedule(this::flushQuietly, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Store everything queued so far
+     */
+    public void flush() throws IOException {
+        // Only one flush at a time, so batches are stored in queue order
+        synchronized (this) {
+            flushScheduled.set(false);
+            List<Pledge> batch = new ArrayList<>(Math.min(queue.size(), BATCH_SIZE));
+            while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Rejections dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void write(List<Pledge> batch) throws IOException {
+        for (Pledge pledge : batch) {
+            pledge.setPledgeId(pledgeDAO.nextPledgeId());
+        }
+        // Appends to pledge storage are ordered with transaction flushes by the log lock
+        synchronized (TransactionLog.getInstance()) {
+            pledgeDAO.appendPledges(batch);
+            SnapshotStore snapshots = SnapshotStore.getInstance();
+            for (Pledge pledge : batch) {
+                snapshots.pledgeAdded(pledge);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // Rejections are statistics only, losing a batch does not affect any committed pledge
+            System.err.println("Could not store rejected pledges: " + e.getMessage());
+        }
+    }
+}
@@ -8,11 +8,25 @@ import java.util.*;
  * Data Access Object for RewardTier model
  */
 public class RewardTierDAO {
-    private static final String CSV_FILE = "reward_tiers.csv";
+    static final String CSV_FILE = "reward_tiers.csv";
     private static final String[] HEADERS = { "tierId", "projectId", "name", "minimumAmount",
             "totalQuantity", "remainingQuantity", "description" };
+    // remainingQuantity is kept in a fixed-width file so a pledge updates it in place
+    static final String QUANTITIES_FILE = "tier_quantities.dat";
 
     public List<RewardTier> loadRewardTiers() throws IOException {
+        TransactionLog log = TransactionLog.getInstance();
+        synchronized (log) {
+            List<RewardTier> tiers = readRewardTiers();
+            log.overlayRewardTiers(tiers);
+            return tiers;
+        }
+    }
+
+    /**
+     * Read reward_tiers.csv as stored, without transactions that are still pending
+     */
+    List<RewardTier> readRewardTiers() throws IOException {
         List<RewardTier> tiers = new ArrayList<>();
         List<String[]> records = CSVUtil.readCSV(CSV_FILE);
 
@@ -31,6 +45,14 @@ public class RewardTierDAO {
             }
         }
 
+        Map<String, Long> quantities = NumericColumnFile.open(QUANTITIES_FILE).readAll();
+        for (RewardTier tier : tiers) {
+            Long quantity = quantities.get(tier.getTierId());
+            if (quantity != null) {
+                tier.setRemainingQuantity(quantity.intValue());
+            }
+        }
+
         return tiers;
     }
 
@@ -52,6 +74,13 @@ public class RewardTierDAO {
         }
 
         CSVUtil.writeCSV(CSV_FILE, records);
+
+        Map<String, Long> quantities = new LinkedHashMap<>();
+        for (RewardTier tier : tiers) {
+            quantities.put(tier.getTierId(), (long) tier.getRemainingQuantity());
+        }
+        NumericColumnFile.open(QUANTITIES_FILE).writeAll(quantities);
+        InventoryService.getInstance().tiersReloaded(tiers);
     }
 
     public List<RewardTier> findByProject(String projectId) throws IOException {
@@ -80,6 +109,24 @@ public class RewardTierDAO {
         saveRewardTiers(tiers);
     }
 
+    /**
+     * Update only the remaining quantity of a tier with a positional write
+     */
+    public void updateRemainingQuantity(String tierId, int remainingQuantity) throws IOException {
+        NumericColumnFile.open(QUANTITIES_FILE).write(tierId, remainingQuantity);
+    }
+
+    /**
+     * Update the remaining quantities of several tiers with positional writes
+     */
+    public void updateRemainingQuantities(Map<String, Integer> quantities) throws IOException {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            values.put(entry.getKey(), (long) entry.getValue());
+        }
+        NumericColumnFile.open(QUANTITIES_FILE).writeAll(values);
+    }
+
     private boolean isHeader(String[] record) {
         return record.length >= 7 && record[0].equals("tierId");
     }
@@ -0,0 +1,587 @@
+package data;
+
+import models.*;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versioned binary image of the loaded tables for fast restarts
+ *
+ * Written on clean shutdown and, if crowdfund.snapshotIntervalMinutes is
+ * set, periodically. IDs are stored once in a dictionary and referenced by
+ * index. Each source file is fingerprinted; on startup a table whose files
+ * changed since the image is reloaded from them, and pledges appended to
+ * pledges.csv since the image are read from the saved offset instead of
+ * reparsing the whole file. Aggregates built from the pledges, registered
+ * through setAggregates, are saved in their own section and restored with
+ * only the replayed pledges added to them. When pledges live in monthly
+ * segments the image leaves them out, since reading the segments is already
+ * cheap; the segment files are fingerprinted instead, and the aggregates are
+ * kept only if none of them changed.
+ */
+public class SnapshotFile {
+    static final String FILE = "snapshot.bin";
+    private static final int MAGIC = 0x43464442; // "CFDB"
+    private static final int FORMAT_VERSION = 2;
+    private static final long INTERVAL_MINUTES = Long.getLong("crowdfund.snapshotIntervalMinutes", 0);
+
+    private static final String[] USER_SOURCES = { UserDAO.CSV_FILE };
+    private static final String[] CATEGORY_SOURCES = { CategoryDAO.CSV_FILE };
+    private static final String[] PROJECT_SOURCES = { ProjectDAO.CSV_FILE, ProjectDAO.AMOUNTS_FILE };
+    private static final String[] TIER_SOURCES = { RewardTierDAO.CSV_FILE, RewardTierDAO.QUANTITIES_FILE };
+    private static final String MANIFEST = Paths.get(PledgeSegmentStore.DIRECTORY, PledgeSegmentStore.MANIFEST_FILE)
+            .toString();
+
+    /**
+     * State derived from the pledges that is saved with the image, such as statistics aggregates
+     */
+    public interface Aggregates {
+        /**
+         * Write the state; returns the number of successful pledges it covers, or -1 if there is none
+         */
+        long write(DataOutputStream out) throws IOException;
+
+        /**
+         * Replace the state with one written by write, then add the pledges stored since
+         */
+        void restore(DataInputStream in, List<Pledge> replayed) throws IOException;
+    }
+
+    private static Aggregates aggregates;
+    // Aggregate section of the image restored at startup, held until the aggregates are registered
+    private static byte[] savedAggregates;
+    private static List<Pledge> replayedSinceImage;
+
+    /**
+     * Tables restored from the image, with what had to be refreshed from the files
+     */
+    static class Tables {
+        List<User> users;
+        List<Category> categories;
+        List<Project> projects;
+        List<RewardTier> tiers;
+        List<Pledge> pledges;
+        final List<String> reloaded = new ArrayList<>();
+        final List<Pledge> replayed = new ArrayList<>();
+        byte[] aggregates; // Null if the image had none or the pledges were reloaded
+
+        int rowCount() {
+            return users.size() + categories.size() + projects.size() + tiers.size() + pledges.size();
+        }
+    }
+
+    /**
+     * Size, modification time and identity of a source file when the image was written
+     */
+    private static class Fingerprint {
+        private final long size;
+        private final long modified;
+        private final String key;
+
+        Fingerprint(long size, long modified, String key) {
+            this.size = size;
+            this.modified = modified;
+            this.key = key;
+        }
+
+        static Fingerprint of(String filename) throws IOException {
+            Path path = Paths.get(filename);
+            if (!Files.exists(path)) {
+                return new Fingerprint(-1, 0, "");
+            }
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Object key = attributes.fileKey();
+            return new Fingerprint(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    key != null ? key.toString() : "");
+        }
+
+        boolean sameFile(Fingerprint other) {
+            return key.equals(other.key);
+        }
+
+        boolean unchanged(Fingerprint other) {
+            return size == other.size && modified == other.modified && sameFile(other);
+        }
+    }
+
+    /**
+     * Write the image on exit and, if configured, at a fixed interval
+     */
+    public static void scheduleWrites() {
+        Runtime.getRuntime().addShutdownHook(new Thread(SnapshotFile::writeQuietly, "snapshot-on-exit"));
+        if (INTERVAL_MINUTES > 0) {
+            ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            writer.scheduleWithFixedDelay(SnapshotFile::writeQuietly, INTERVAL_MINUTES, INTERVAL_MINUTES,
+                    TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Register the aggregates to save with the image
+     * If the image restored at startup had them, they are restored right away
+     */
+    public static synchronized void setAggregates(Aggregates registered) {
+        aggregates = registered;
+        byte[] saved = savedAggregates;
+        savedAggregates = null;
+        if (registered == null || saved == null) {
+            return;
+        }
+        try {
+            registered.restore(new DataInputStream(new ByteArrayInputStream(saved)), replayedSinceImage);
+        } catch (IOException e) {
+            // The aggregates are rebuilt from the pledges on first use instead
+            System.err.println("Could not restore aggregates from snapshot: " + e.getMessage());
+        } finally {
+            replayedSinceImage = null;
+        }
+    }
+
+    /**
+     * Keep the aggregate section of an image whose tables were installed, for setAggregates
+     */
+    static synchronized void offerAggregates(Tables tables) {
+        savedAggregates = tables.aggregates;
+        replayedSinceImage = tables.replayed;
+    }
+
+    /**
+     * Flush pending transactions and write the current tables
+     */
+    public static void write() throws IOException {
+        // Taken before the log lock, since the aggregates' own lock may be held while a snapshot rebuilds
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        Aggregates registered;
+        synchronized (SnapshotFile.class) {
+            registered = aggregates;
+        }
+        long covered = registered != null ? registered.write(new DataOutputStream(section)) : -1;
+
+        TransactionLog log = TransactionLog.getInstance();
+        synchronized (log) {
+            // With the log flushed the files hold exactly what the snapshot holds
+            log.flush();
+            boolean segmented = new PledgeDAO().usesSegments();
+
+            // Fingerprints are taken first; rows added after them are skipped by ID on replay
+            Map<String, Fingerprint> sources = new LinkedHashMap<>();
+            for (String[] group : Arrays.asList(USER_SOURCES, CATEGORY_SOURCES, PROJECT_SOURCES, TIER_SOURCES)) {
+                for (String source : group) {
+                    sources.put(source, Fingerprint.of(source));
+                }
+            }
+            Fingerprint pledgeFile;
+            long pledgeOffset;
+            long pledgeCheck;
+            if (segmented) {
+                // Segments are read whole on restart; an offset of -1 marks an image without pledges
+                for (String segment : new PledgeSegmentStore().files(null)) {
+                    sources.put(segment, Fingerprint.of(segment));
+                }
+                pledgeFile = Fingerprint.of(MANIFEST);
+                pledgeOffset = -1;
+                pledgeCheck = 0;
+            } else {
+                pledgeFile = Fingerprint.of(PledgeDAO.CSV_FILE);
+                pledgeOffset = completeLength(PledgeDAO.CSV_FILE, pledgeFile.size);
+                pledgeCheck = CSVUtil.checksumBefore(new File(PledgeDAO.CSV_FILE), pledgeOffset);
+            }
+
+            DataSnapshot snapshot = SnapshotStore.getInstance().current();
+            List<RewardTier> tiers = new RewardTierDAO().loadRewardTiers();
+            // Aggregates that saw more or fewer pledges than the image holds are left to rebuild
+            long successful = snapshot.getPledges().stream().filter(Pledge::isSuccessful).count();
+            byte[] saved = covered >= 0 && covered == successful ? section.toByteArray() : new byte[0];
+
+            Path target = Paths.get(FILE).toAbsolutePath();
+            Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                            Channels.newOutputStream(channel), CSVUtil.WRITE_BUFFER_SIZE));
+                    writeImage(out, sources, pledgeFile, pledgeOffset, pledgeCheck, snapshot, tiers, saved);
+                    out.flush();
+                    if (CSVUtil.getDurability() != CSVUtil.Durability.NONE) {
+                        channel.force(true);
+                    }
+                }
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Restore the tables from the image and the changes made since
+     * Returns null when there is no usable image
+     */
+    static Tables read() throws IOException {
+        Path path = Paths.get(FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(path), CSVUtil.WRITE_BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            return readImage(in);
+        } catch (EOFException | RuntimeException e) {
+            // Truncated or written by an incompatible build, start from the files
+            return null;
+        }
+    }
+
+    private static void writeQuietly() {
+        try {
+            write();
+        } catch (IOException e) {
+            // The next start reads the files instead
+            System.err.println("Could not write snapshot: " + e.getMessage());
+        }
+    }
+
+    private static void writeImage(DataOutputStream out, Map<String, Fingerprint> sources, Fingerprint pledgeFile,
+            long pledgeOffset, long pledgeCheck, DataSnapshot snapshot, List<RewardTier> tiers, byte[] saved)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+
+        out.writeInt(sources.size());
+        for (Map.Entry<String, Fingerprint> source : sources.entrySet()) {
+            writeString(out, source.getKey());
+            writeFingerprint(out, source.getValue());
+        }
+        writeFingerprint(out, pledgeFile);
+        out.writeLong(pledgeOffset);
+        out.writeLong(pledgeCheck);
+
+        // ID dictionary shared by every table
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        java.util.function.Consumer<String> intern = id -> {
+            if (id != null && !ids.containsKey(id)) {
+                ids.put(id, dictionary.size());
+                dictionary.add(id);
+            }
+        };
+        snapshot.getUsers().forEach(user -> intern.accept(user.getUserId()));
+        snapshot.getCategories().forEach(category -> intern.accept(category.getCategoryId()));
+        snapshot.getProjects().forEach(project -> intern.accept(project.getProjectId()));
+        tiers.forEach(tier -> intern.accept(tier.getTierId()));
+        out.writeInt(dictionary.size());
+        for (String id : dictionary) {
+            writeString(out, id);
+        }
+
+        out.writeInt(snapshot.getUsers().size());
+        for (User user : snapshot.getUsers()) {
+            writeId(out, ids, user.getUserId());
+            writeString(out, user.getUsername());
+            writeString(out, user.getEmail());
+            writeString(out, user.getPassword());
+        }
+
+        out.writeInt(snapshot.getCategories().size());
+        for (Category category : snapshot.getCategories()) {
+            writeId(out, ids, category.getCategoryId());
+            writeString(out, category.getName());
+            writeString(out, category.getDescription());
+        }
+
+        out.writeInt(snapshot.getProjects().size());
+        for (Project project : snapshot.getProjects()) {
+            writeId(out, ids, project.getProjectId());
+            writeString(out, project.getName());
+            out.writeDouble(project.getGoalAmount());
+            out.writeLong(project.getDeadline() != null ? project.getDeadline().toEpochDay() : Long.MIN_VALUE);
+            out.writeDouble(project.getCurrentAmount());
+            writeId(out, ids, project.getCategoryId());
+            writeString(out, project.getDescription());
+            writeId(out, ids, project.getCreatorId());
+        }
+
+        out.writeInt(tiers.size());
+        for (RewardTier tier : tiers) {
+            writeId(out, ids, tier.getTierId());
+            writeId(out, ids, tier.getProjectId());
+            writeString(out, tier.getName());
+            out.writeDouble(tier.getMinimumAmount());
+            out.writeInt(tier.getTotalQuantity());
+            out.writeInt(tier.getRemainingQuantity());
+            writeString(out, tier.getDescription());
+        }
+
+        List<Pledge> pledges = pledgeOffset >= 0 ? snapshot.getPledges() : Collections.emptyList();
+        out.writeInt(pledgeOffset >= 0 ? pledges.size() : -1);
+        for (Pledge pledge : pledges) {
+            writeString(out, pledge.getPledgeId());
+            writeId(out, ids, pledge.getUserId());
+            writeId(out, ids, pledge.getProjectId());
+            LocalDateTime time = pledge.getPledgeTime();
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+            out.writeDouble(pledge.getAmount());
+            writeId(out, ids, pledge.getRewardTierId());
+            out.writeByte(pledge.getStatus().ordinal());
+            writeString(out, pledge.getRejectionReason());
+        }
+
+        out.writeInt(saved.length);
+        out.write(saved);
+    }
+
+    private static Tables readImage(DataInputStream in) throws IOException {
+        Set<String> changed = new HashSet<>();
+        int sourceCount = in.readInt();
+        for (int i = 0; i < sourceCount; i++) {
+            String source = readString(in);
+            if (!readFingerprint(in).unchanged(Fingerprint.of(source))) {
+                changed.add(source);
+            }
+        }
+        Fingerprint savedPledgeFile = readFingerprint(in);
+        long pledgeOffset = in.readLong();
+        long pledgeCheck = in.readLong();
+        boolean segmented = pledgeOffset < 0;
+        if (segmented != new PledgeDAO().usesSegments()) {
+            // Pledges were moved into or out of segments since the image
+            return null;
+        }
+
+        String[] dictionary = new String[in.readInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(in);
+        }
+
+        Tables tables = new Tables();
+        int count = in.readInt();
+        tables.users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tables.users.add(new User(readId(in, dictionary), readString(in), readString(in), readString(in)));
+        }
+
+        count = in.readInt();
+        tables.categories = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tables.categories.add(new Category(readId(in, dictionary), readString(in), readString(in)));
+        }
+
+        count = in.readInt();
+        tables.projects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String projectId = readId(in, dictionary);
+            String name = readString(in);
+            double goal = in.readDouble();
+            long deadline = in.readLong();
+            double current = in.readDouble();
+            Project project = new Project(projectId, name, goal,
+                    deadline != Long.MIN_VALUE ? LocalDate.ofEpochDay(deadline) : null,
+                    readId(in, dictionary), readString(in), readId(in, dictionary));
+            project.setCurrentAmount(current);
+            tables.projects.add(project);
+        }
+
+        count = in.readInt();
+        tables.tiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            RewardTier tier = new RewardTier(readId(in, dictionary), readId(in, dictionary), readString(in),
+                    in.readDouble(), in.readInt(), null);
+            tier.setRemainingQuantity(in.readInt());
+            tier.setDescription(readString(in));
+            tables.tiers.add(tier);
+        }
+
+        count = Math.max(0, in.readInt());
+        tables.pledges = new ArrayList<>(count);
+        Pledge.PledgeStatus[] statuses = Pledge.PledgeStatus.values();
+        for (int i = 0; i < count; i++) {
+            Pledge pledge = new Pledge();
+            pledge.setPledgeId(readString(in));
+            pledge.setUserId(readId(in, dictionary));
+            pledge.setProjectId(readId(in, dictionary));
+            pledge.setPledgeTime(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+            pledge.setAmount(in.readDouble());
+            pledge.setRewardTierId(readId(in, dictionary));
+            pledge.setStatus(statuses[in.readByte()]);
+            pledge.setRejectionReason(readString(in));
+            tables.pledges.add(pledge);
+        }
+
+        int sectionLength = in.readInt();
+        if (sectionLength > 0) {
+            tables.aggregates = new byte[sectionLength];
+            in.readFully(tables.aggregates);
+        }
+
+        // Tables whose files changed since the image are small; reload them whole
+        if (anyChanged(changed, USER_SOURCES)) {
+            tables.users = new UserDAO().loadUsers();
+            tables.reloaded.add("users");
+        }
+        if (anyChanged(changed, CATEGORY_SOURCES)) {
+            tables.categories = new CategoryDAO().loadCategories();
+            tables.reloaded.add("categories");
+        }
+        if (anyChanged(changed, PROJECT_SOURCES)) {
+            tables.projects = new ProjectDAO().loadProjects();
+            tables.reloaded.add("projects");
+        }
+        if (anyChanged(changed, TIER_SOURCES)) {
+            tables.tiers = new RewardTierDAO().loadRewardTiers();
+            tables.reloaded.add("rewardTiers");
+        }
+        if (segmented) {
+            tables.pledges = new PledgeDAO().loadPledges();
+            if (!savedPledgeFile.unchanged(Fingerprint.of(MANIFEST)) || changed.stream().anyMatch(
+                    source -> source.startsWith(PledgeSegmentStore.DIRECTORY + File.separator))) {
+                // Which pledges are new is not known, so the aggregates are rebuilt
+                tables.reloaded.add("pledges");
+            }
+        } else {
+            replayPledges(tables, savedPledgeFile, pledgeOffset, pledgeCheck);
+        }
+        if (tables.reloaded.contains("pledges")) {
+            tables.aggregates = null;
+        }
+        return tables;
+    }
+
+    /**
+     * Add pledges appended since the image, or reload them all if the file was rewritten
+     */
+    private static void replayPledges(Tables tables, Fingerprint saved, long offset, long check) throws IOException {
+        Fingerprint current = Fingerprint.of(PledgeDAO.CSV_FILE);
+        if (current.unchanged(saved)) {
+            return;
+        }
+        boolean appended = current.sameFile(saved) && current.size >= offset
+                && CSVUtil.checksumBefore(new File(PledgeDAO.CSV_FILE), offset) == check;
+        if (!appended) {
+            tables.pledges = new PledgeDAO().loadPledges();
+            tables.reloaded.add("pledges");
+            return;
+        }
+
+        Set<String> known = new HashSet<>();
+        for (Pledge pledge : tables.pledges) {
+            known.add(pledge.getPledgeId());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(PledgeDAO.CSV_FILE, "r")) {
+            byte[] tail = new byte[(int) (raf.length() - offset)];
+            raf.seek(offset);
+            raf.readFully(tail);
+            String text = new String(tail, Charset.defaultCharset());
+            for (String line : text.split("\r?\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Pledge pledge = PledgeDAO.toStoredPledge(CSVUtil.parseCSVLine(line));
+                if (pledge != null && known.add(pledge.getPledgeId())) {
+                    tables.pledges.add(pledge);
+                    tables.replayed.add(pledge);
+                }
+            }
+        }
+    }
+
+    private static boolean anyChanged(Set<String> changed, String[] sources) {
+        for (String source : sources) {
+            if (changed.contains(source)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Length of the file up to and including its last newline
+     */
+    private static long completeLength(String filename, long size) throws IOException {
+        if (size <= 0) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+            for (long position = size; position > 0; position--) {
+                raf.seek(position - 1);
+                if (raf.read() == '\n') {
+                    return position;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static void writeFingerprint(DataOutputStream out, Fingerprint fingerprint) throws IOException {
+        out.writeLong(fingerprint.size);
+        out.writeLong(fingerprint.modified);
+        writeString(out, fingerprint.key);
+    }
+
+    private static Fingerprint readFingerprint(DataInputStream in) throws IOException {
+        return new Fingerprint(in.readLong(), in.readLong(), readString(in));
+    }
+
+    private static void writeId(DataOutputStream out, Map<String, Integer> ids, String id) throws IOException {
+        Integer index = id != null ? ids.get(id) : null;
+        if (index != null) {
+            out.writeInt(index);
+        } else if (id == null) {
+            out.writeInt(-1);
+        } else {
+            // Not in the dictionary, e.g. a pledge for a deleted project
+            out.writeInt(-2);
+            writeString(out, id);
+        }
+    }
+
+    private static String readId(DataInputStream in, String[] dictionary) throws IOException {
+        int index = in.readInt();
+        if (index == -1) {
+            return null;
+        }
+        return index == -2 ? readString(in) : dictionary[index];
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+package data;
+
+import models.*;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Publishes DataSnapshot versions for lock-free, consistent reads
+ *
+ * Committed pledges publish a new version derived from the current one, so
+ * readers take the latest version with a single volatile read and never wait
+ * for processPledge. Writes the store cannot apply incrementally (table
+ * rewrites, external edits) drop the current version; the next reader then
+ * rebuilds it from the files while holding the transaction log lock.
+ */
+public class SnapshotStore {
+    private static final SnapshotStore INSTANCE = new SnapshotStore();
+
+    private volatile DataSnapshot current;
+    private long nextVersion = 1;
+    // Bumped whenever the files change in a way the current version does not reflect
+    private long generation;
+
+    public static SnapshotStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Pin the latest version
+     */
+    public DataSnapshot current() throws IOException {
+        DataSnapshot snapshot = current;
+        return snapshot != null ? snapshot : rebuild();
+    }
+
+    /**
+     * Drop the current version, the next reader rebuilds it from the files
+     */
+    public synchronized void invalidate() {
+        current = null;
+        generation++;
+    }
+
+    /**
+     * Listener that invalidates the current version when the watcher sees a table change
+     */
+    public DataWatcher.Listener invalidationListener() {
+        return new DataWatcher.Listener() {
+            @Override
+            public void usersReloaded(List<User> users) {
+                invalidate();
+            }
+
+            @Override
+            public void categoriesReloaded(List<Category> categories) {
+                invalidate();
+            }
+
+            @Override
+            public void projectsReloaded(List<Project> projects) {
+                invalidate();
+            }
+
+            @Override
+            public void pledgesReloaded(List<Pledge> pledges) {
+                invalidate();
+            }
+
+            @Override
+            public void pledgesAppended(List<Pledge> pledges) {
+                invalidate();
+            }
+        };
+    }
+
+    /**
+     * Publish a committed pledge transaction; called with the transaction log locked
+     */
+    synchronized void committed(TransactionLog.PledgeTransaction tx) {
+        if (current != null) {
+            current = current.withPledge(nextVersion++, tx.getPledge(), tx.getProjectId(), tx.getProjectAmount());
+        } else {
+            // A preload in progress may have read the files before this commit
+            generation++;
+        }
+    }
+
+    /**
+     * Note that pending transactions are being written to the tables; called with the transaction log locked
+     * Tables read outside the lock meanwhile may hold some of them twice or not at all
+     */
+    synchronized void tablesFlushing() {
+        if (current == null) {
+            generation++;
+        }
+    }
+
+    /**
+     * Generation to hand back to install once tables loaded outside the log lock are complete
+     */
+    synchronized long beginInstall() {
+        return generation;
+    }
+
+    /**
+     * Publish tables loaded by the caller, unless the files or commits moved on since beginInstall
+     */
+    synchronized boolean install(long startGeneration, List<User> users, List<Category> categories,
+            List<Project> projects, List<Pledge> pledges) {
+        if (current != null || generation != startGeneration) {
+            return false;
+        }
+        current = new DataSnapshot(nextVersion++, users, categories, projects, pledges);
+        return true;
+    }
+
+    /**
+     * Publish a pledge stored outside a transaction
+     */
+    synchronized void pledgeAdded(Pledge pledge) {
+        if (current != null) {
+            current = current.withPledge(nextVersion++, pledge, null, 0);
+        } else {
+            // A rebuild in progress may have read the files before this pledge
+            generation++;
+        }
+    }
+
+    private DataSnapshot rebuild() throws IOException {
+        TransactionLog log = TransactionLog.getInstance();
+        // Holding the log lock means no commit lands between reading the tables
+        synchronized (log) {
+            long startGeneration;
+            synchronized (this) {
+                if (current != null) {
+                    return current;
+                }
+                startGeneration = generation;
+            }
+
+            List<User> users = new UserDAO().loadUsers();
+            List<Category> categories = new CategoryDAO().loadCategories();
+            List<Project> projects = new ProjectDAO().loadProjects();
+            List<Pledge> pledges = new PledgeDAO().loadPledges();
+
+            synchronized (this) {
+                DataSnapshot snapshot = new DataSnapshot(nextVersion++, users, categories, projects, pledges);
+                if (generation == startGeneration) {
+                    current = snapshot;
+                }
+                return snapshot;
+            }
+        }
+    }
+}
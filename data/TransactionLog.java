@@ -0,0 +1,347 @@
+package data;
+
+import models.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log that makes a pledge and its project and reward tier
+ * updates atomic across the three CSV files
+ *
+ * A transaction is committed by appending one checksummed line to
+ * transactions.log. The table updates happen later in a single coalesced
+ * batch; until then the DAOs overlay the pending changes on what they read.
+ * On startup any committed transactions still in the log are replayed.
+ */
+public class TransactionLog {
+    static final String LOG_FILE = "transactions.log";
+    private static final long FLUSH_DELAY_MILLIS = Long.getLong("crowdfund.flushDelayMillis", 250);
+    private static final TransactionLog INSTANCE = new TransactionLog(Paths.get(LOG_FILE));
+
+    /**
+     * One committed pledge with the resulting project amount and tier quantity
+     */
+    public static class PledgeTransaction {
+        private final Pledge pledge;
+        private final String projectId;
+        private final double projectAmount;
+        private final String tierId;
+        private final int tierRemaining;
+        boolean pledgeWritten; // Already appended to pledge storage
+
+        public PledgeTransaction(Pledge pledge, Project project, RewardTier tier) {
+            this(pledge, project.getProjectId(), project.getCurrentAmount(),
+                    tier != null ? tier.getTierId() : null, tier != null ? tier.getRemainingQuantity() : 0);
+        }
+
+        public PledgeTransaction(Pledge pledge, String projectId, double projectAmount, String tierId,
+                int tierRemaining) {
+            this.pledge = pledge;
+            this.projectId = projectId;
+            this.projectAmount = projectAmount;
+            this.tierId = tierId;
+            this.tierRemaining = tierRemaining;
+        }
+
+        public Pledge getPledge() {
+            return pledge;
+        }
+
+        public String getProjectId() {
+            return projectId;
+        }
+
+        public double getProjectAmount() {
+            return projectAmount;
+        }
+
+        public String getTierId() {
+            return tierId;
+        }
+
+        public int getTierRemaining() {
+            return tierRemaining;
+        }
+    }
+
+    private final Path path;
+    private final List<PledgeTransaction> pending = new ArrayList<>();
+    private final ScheduledExecutorService flusher;
+    private FileChannel channel;
+    private long sequence;
+    private boolean flushScheduled;
+
+    TransactionLog(Path path) {
+        this.path = path;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "transaction-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "transaction-flush-on-exit"));
+    }
+
+    public static TransactionLog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replay committed transactions left in the log by a previous run
+     * Returns the number of transactions recovered
+     */
+    public synchronized int recover() throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        List<PledgeTransaction> recovered = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(path, Charset.defaultCharset())) {
+            lineNumber++;
+            PledgeTransaction tx = parse(line);
+            if (tx == null) {
+                // Torn write from a crash; the lines around it are separate commits
+                System.err.println("Skipping damaged transaction on line " + lineNumber + " of " + path);
+                continue;
+            }
+            recovered.add(tx);
+        }
+
+        if (!recovered.isEmpty()) {
+            // A crash during an earlier flush may have already stored some of the pledges
+            Set<String> stored = new HashSet<>();
+            for (Pledge pledge : new PledgeDAO().readPledges()) {
+                stored.add(pledge.getPledgeId());
+            }
+            for (PledgeTransaction tx : recovered) {
+                tx.pledgeWritten = stored.contains(tx.getPledge().getPledgeId());
+            }
+        }
+
+        pending.addAll(recovered);
+        flush();
+        return recovered.size();
+    }
+
+    /**
+     * Durably commit a pledge transaction
+     * Once this returns the pledge survives a crash even if the tables are not yet rewritten
+     */
+    public synchronized void commit(PledgeTransaction tx) throws IOException {
+        append(format(tx) + System.lineSeparator());
+        pending.add(tx);
+        SnapshotStore.getInstance().committed(tx);
+
+        if (FLUSH_DELAY_MILLIS <= 0) {
+            // The transaction is durable from here on, a failed flush is retried rather than reported
+            flushQuietly();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            flusher.schedule(this::flushQuietly, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Durably commit many pledge transactions with one log write and sync
+     * Instead of publishing each pledge, the current snapshot is dropped once and rebuilt on
+     * demand; call flush afterwards to apply the batch to the tables right away
+     */
+    public synchronized void commitBatch(List<PledgeTransaction> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (PledgeTransaction tx : batch) {
+            lines.append(format(tx)).append(System.lineSeparator());
+        }
+        append(lines.toString());
+        pending.addAll(batch);
+        SnapshotStore.getInstance().invalidate();
+    }
+
+    /**
+     * Apply all pending transactions to the tables in one batch, then truncate the log
+     */
+    public synchronized void flush() throws IOException {
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        SnapshotStore.getInstance().tablesFlushing();
+
+        List<Pledge> unwritten = new ArrayList<>();
+        for (PledgeTransaction tx : pending) {
+            if (!tx.pledgeWritten) {
+                unwritten.add(tx.getPledge());
+            }
+        }
+        // A failed append leaves no rows behind, so the retry on the next flush cannot duplicate any
+        new PledgeDAO().appendPledges(unwritten);
+        for (PledgeTransaction tx : pending) {
+            tx.pledgeWritten = true;
+        }
+
+        // Later transactions overwrite earlier ones, so each value is written once
+        Map<String, Double> amounts = new LinkedHashMap<>();
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (PledgeTransaction tx : pending) {
+            amounts.put(tx.getProjectId(), tx.getProjectAmount());
+            if (tx.getTierId() != null) {
+                quantities.put(tx.getTierId(), tx.getTierRemaining());
+            }
+        }
+        new ProjectDAO().updateCurrentAmounts(amounts);
+        new RewardTierDAO().updateRemainingQuantities(quantities);
+
+        // The tables now hold everything in the log
+        pending.clear();
+        channel().truncate(0);
+        sequence = 0;
+    }
+
+    /**
+     * Add pending pledges that are not yet stored to a list of stored pledges
+     */
+    synchronized void overlayPledges(List<Pledge> pledges) {
+        for (PledgeTransaction tx : pending) {
+            if (!tx.pledgeWritten) {
+                pledges.add(tx.getPledge());
+            }
+        }
+    }
+
+    /**
+     * Latest pending current amount of each project with a pending transaction
+     */
+    synchronized Map<String, Double> pendingProjectAmounts() {
+        Map<String, Double> amounts = new HashMap<>();
+        for (PledgeTransaction tx : pending) {
+            amounts.put(tx.getProjectId(), tx.getProjectAmount());
+        }
+        return amounts;
+    }
+
+    /**
+     * Apply pending current amounts to a list read from projects.csv
+     */
+    synchronized void overlayProjects(List<Project> projects) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Double> amounts = pendingProjectAmounts();
+        for (Project project : projects) {
+            Double amount = amounts.get(project.getProjectId());
+            if (amount != null) {
+                project.setCurrentAmount(amount);
+            }
+        }
+    }
+
+    /**
+     * Apply pending remaining quantities to a list read from reward_tiers.csv
+     */
+    synchronized void overlayRewardTiers(List<RewardTier> tiers) {
+        Map<String, Integer> remaining = new HashMap<>();
+        for (PledgeTransaction tx : pending) {
+            if (tx.getTierId() != null) {
+                remaining.put(tx.getTierId(), tx.getTierRemaining());
+            }
+        }
+        for (RewardTier tier : tiers) {
+            Integer quantity = remaining.get(tier.getTierId());
+            if (quantity != null) {
+                tier.setRemainingQuantity(quantity);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // The log still holds the transactions, they are replayed on next start
+            System.err.println("Could not apply pending transactions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write and sync log lines; on failure the log is cut back to its old length,
+     * so no partial line is left for later commits to follow
+     */
+    private void append(String lines) throws IOException {
+        FileChannel log = channel();
+        long length = log.size();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(Charset.defaultCharset()));
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            if (CSVUtil.getDurability() != CSVUtil.Durability.NONE) {
+                log.force(false);
+            }
+        } catch (IOException e) {
+            try {
+                log.truncate(length);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private String format(PledgeTransaction tx) {
+        List<String> fields = new ArrayList<>();
+        fields.add(String.valueOf(++sequence));
+        fields.addAll(Arrays.asList(PledgeDAO.toRecord(tx.getPledge())));
+        fields.add(tx.getProjectId());
+        fields.add(String.valueOf(tx.getProjectAmount()));
+        fields.add(tx.getTierId() != null ? tx.getTierId() : "");
+        fields.add(String.valueOf(tx.getTierRemaining()));
+
+        String body = CSVUtil.formatCSVLine(fields.toArray(new String[0]));
+        return body + "," + checksum(body);
+    }
+
+    private PledgeTransaction parse(String line) {
+        int comma = line.lastIndexOf(',');
+        if (comma < 0) {
+            return null;
+        }
+        String body = line.substring(0, comma);
+        if (!line.substring(comma + 1).equals(checksum(body))) {
+            return null;
+        }
+
+        String[] fields = CSVUtil.parseCSVLine(body);
+        if (fields.length != 13) {
+            return null;
+        }
+        try {
+            Pledge pledge = PledgeDAO.toPledge(Arrays.copyOfRange(fields, 1, 9));
+            return new PledgeTransaction(pledge, fields[9], Double.parseDouble(fields[10]),
+                    fields[11].isEmpty() ? null : fields[11], Integer.parseInt(fields[12]));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String checksum(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(Charset.defaultCharset()));
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -2,16 +2,56 @@ package data;
 
 import models.User;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Data Access Object for User model
  * Handles CSV file operations for users
  */
 public class UserDAO {
-    private static final String CSV_FILE = "users.csv";
+    static final String CSV_FILE = "users.csv";
     private static final String[] HEADERS = { "userId", "username", "email", "password" };
 
+    private static final long UPGRADE_DELAY_MILLIS = 1000;
+    private static final int MIGRATION_CHUNK = Integer.getInteger("crowdfund.passwordMigrationChunk", 1000);
+    private static final int MIGRATION_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Made on first use so class loading does not pay for a hash
+    private static class Dummy {
+        static final String HASH = PasswordHasher.hash("");
+    }
+
+    /**
+     * Users by name and by ID, kept apart from the data snapshot so a login never waits for pledges to load
+     */
+    private static class UserIndex {
+        private final Map<String, User> byName = new ConcurrentHashMap<>();
+        private final Map<String, User> byId = new ConcurrentHashMap<>();
+
+        UserIndex(List<User> users) {
+            users.forEach(this::put);
+        }
+
+        void put(User user) {
+            byName.put(user.getUsername(), user);
+            byId.put(user.getUserId(), user);
+        }
+    }
+
+    private static volatile UserIndex index;
+    // New hashes by user ID, not yet written to the users file
+    private static final Map<String, String> pendingHashes = new ConcurrentHashMap<>();
+    private static final AtomicBoolean upgradeScheduled = new AtomicBoolean();
+    // Writes password upgrades and runs the migration, one at a time
+    private static final ScheduledExecutorService UPGRADE_WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "password-upgrades");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Load all users from CSV file
      */
@@ -39,6 +79,12 @@ public class UserDAO {
      * Save all users to CSV file
      */
     public void saveUsers(List<User> users) throws IOException {
+        writeUsers(users);
+        usersReloaded(users);
+        SnapshotStore.getInstance().invalidate();
+    }
+
+    private void writeUsers(List<User> users) throws IOException {
         List<String[]> records = new ArrayList<>();
 
         // Add header
@@ -59,45 +105,166 @@ public class UserDAO {
     }
 
     /**
-     * Find user by username
+     * Find user by username through the user index
+     * The returned user is shared and must not be modified
      */
     public User findByUsername(String username) throws IOException {
-        List<User> users = loadUsers();
-        return users.stream()
-                .filter(u -> u.getUsername().equals(username))
-                .findFirst()
-                .orElse(null);
+        return index().byName.get(username);
     }
 
     /**
-     * Find user by ID
+     * Find user by ID through the user index
+     * The returned user is shared and must not be modified
      */
     public User findById(String userId) throws IOException {
-        List<User> users = loadUsers();
-        return users.stream()
-                .filter(u -> u.getUserId().equals(userId))
-                .findFirst()
-                .orElse(null);
+        return index().byId.get(userId);
     }
 
     /**
-     * Add new user
+     * Add new user, hashing a plaintext password
      */
     public void addUser(User user) throws IOException {
-        List<User> users = loadUsers();
-        users.add(user);
-        saveUsers(users);
+        if (!PasswordHasher.isHashed(user.getPassword())) {
+            user.setPassword(PasswordHasher.hash(user.getPassword()));
+        }
+        synchronized (UserDAO.class) {
+            List<User> users = loadUsers();
+            users.add(user);
+            saveUsers(users);
+        }
     }
 
     /**
      * Authenticate user
+     * Plaintext passwords and hashes weaker than the current cost are replaced after a successful check
      */
     public User authenticate(String username, String password) throws IOException {
         User user = findByUsername(username);
-        if (user != null && user.getPassword().equals(password)) {
-            return user;
+        if (user == null) {
+            // Spend the same time as a wrong password so unknown usernames cannot be told apart
+            PasswordHasher.verify(password, Dummy.HASH);
+            return null;
+        }
+        if (!PasswordHasher.verify(password, user.getPassword())) {
+            return null;
+        }
+        if (PasswordHasher.needsRehash(user.getPassword())) {
+            upgradePassword(user, PasswordHasher.hash(password));
+        }
+        return user;
+    }
+
+    /**
+     * Hash the remaining plaintext passwords on a background thread, a chunk at a time
+     * Logins are not held up: each chunk is written together with the upgrades made by logins meanwhile
+     */
+    public static void startPasswordMigration() {
+        UPGRADE_WRITER.execute(() -> {
+            try {
+                List<User> plaintext = new ArrayList<>();
+                for (User user : new UserDAO().loadUsers()) {
+                    if (!PasswordHasher.isHashed(user.getPassword())) {
+                        plaintext.add(user);
+                    }
+                }
+                ForkJoinPool pool = new ForkJoinPool(MIGRATION_THREADS);
+                try {
+                    for (int from = 0; from < plaintext.size(); from += MIGRATION_CHUNK) {
+                        List<User> chunk = plaintext.subList(from, Math.min(plaintext.size(), from + MIGRATION_CHUNK));
+                        pool.submit(() -> chunk.parallelStream().forEach(user -> pendingHashes.putIfAbsent(
+                                user.getUserId(), PasswordHasher.hash(user.getPassword())))).get();
+                        writeUpgrades();
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+            } catch (IOException | ExecutionException e) {
+                // Not fatal, plaintext passwords still verify and are upgraded on login
+                System.err.println("Password migration failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Use a new hash from now on and store it with the next batch of upgrades
+     */
+    private void upgradePassword(User user, String hash) throws IOException {
+        index().put(new User(user.getUserId(), user.getUsername(), user.getEmail(), hash));
+        pendingHashes.put(user.getUserId(), hash);
+        if (upgradeScheduled.compareAndSet(false, true)) {
+            UPGRADE_WRITER.schedule(UserDAO::writeUpgradesQuietly, UPGRADE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write every queued hash in one rewrite of the users file
+     */
+    private static void writeUpgrades() throws IOException {
+        upgradeScheduled.set(false);
+        if (pendingHashes.isEmpty()) {
+            return;
+        }
+        synchronized (UserDAO.class) {
+            Map<String, String> hashes = new HashMap<>(pendingHashes);
+            UserDAO dao = new UserDAO();
+            List<User> users = dao.loadUsers();
+            for (User stored : users) {
+                String hash = hashes.get(stored.getUserId());
+                if (hash != null) {
+                    stored.setPassword(hash);
+                }
+            }
+            dao.writeUsers(users);
+            DataWatcher.ignoreOwnWrite(Paths.get(CSV_FILE));
+            UserIndex current = index;
+            if (current != null) {
+                for (User stored : users) {
+                    if (hashes.containsKey(stored.getUserId())) {
+                        current.put(stored);
+                    }
+                }
+            }
+            hashes.forEach(pendingHashes::remove);
         }
-        return null;
+    }
+
+    private static void writeUpgradesQuietly() {
+        try {
+            writeUpgrades();
+        } catch (IOException e) {
+            // The user logs in with the new hash from memory; it is stored with the next batch
+            System.err.println("Could not store upgraded passwords: " + e.getMessage());
+        }
+    }
+
+    private static UserIndex index() throws IOException {
+        UserIndex current = index;
+        if (current == null) {
+            synchronized (UserDAO.class) {
+                if (index == null) {
+                    index = new UserIndex(new UserDAO().loadUsers());
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replace the index with users loaded elsewhere, e.g. by the warm-up or the data watcher
+     * Hashes not yet written are kept
+     */
+    static void usersReloaded(List<User> users) {
+        UserIndex reloaded = new UserIndex(users);
+        pendingHashes.forEach((userId, hash) -> {
+            User user = reloaded.byId.get(userId);
+            if (user != null) {
+                reloaded.put(new User(userId, user.getUsername(), user.getEmail(), hash));
+            }
+        });
+        index = reloaded;
     }
 
     private boolean isHeader(String[] record) {
@@ -0,0 +1,214 @@
+package data;
+
+import models.*;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Startup phase that loads every table concurrently into the shared stores
+ *
+ * Users, categories, projects and pledges become the first SnapshotStore
+ * version and reward tiers seed the InventoryService, so the first screens
+ * read memory instead of parsing files. Each table is timed separately to
+ * show which one dominates a cold start. When a SnapshotFile image exists
+ * the tables come from it instead, plus whatever changed since.
+ */
+public class WarmUp {
+
+    /**
+     * Load time and row count of one table
+     */
+    public static class TableTiming {
+        private final String table;
+        private final long millis;
+        private final int rows;
+
+        TableTiming(String table, long millis, int rows) {
+            this.table = table;
+            this.millis = millis;
+            this.rows = rows;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+    }
+
+    /**
+     * Per-table timings, in load order, and the wall-clock time of the whole phase
+     */
+    public static class Report {
+        private final List<TableTiming> timings;
+        private final long totalMillis;
+        private final boolean installed;
+        private final String note;
+
+        Report(List<TableTiming> timings, long totalMillis, boolean installed, String note) {
+            this.timings = Collections.unmodifiableList(timings);
+            this.totalMillis = totalMillis;
+            this.installed = installed;
+            this.note = note;
+        }
+
+        public List<TableTiming> getTimings() {
+            return timings;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        /**
+         * False if the data changed during the load and the snapshot was left to rebuild on demand
+         */
+        public boolean isInstalled() {
+            return installed;
+        }
+
+        public TableTiming getSlowest() {
+            return timings.stream().max(Comparator.comparingLong(TableTiming::getMillis)).orElse(null);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("Warm-up took ").append(totalMillis).append(" ms");
+            for (TableTiming timing : timings) {
+                text.append(String.format("%n  %-12s %6d ms %9d rows", timing.getTable(), timing.getMillis(),
+                        timing.getRows()));
+            }
+            TableTiming slowest = getSlowest();
+            if (slowest != null) {
+                text.append(String.format("%n  slowest: %s", slowest.getTable()));
+            }
+            if (note != null) {
+                text.append(String.format("%n  %s", note));
+            }
+            return text.toString();
+        }
+    }
+
+    private interface TableLoader<T> {
+        List<T> load() throws IOException;
+    }
+
+    /**
+     * Load all tables in parallel and publish them; returns the timing report
+     */
+    public static Report run() throws IOException {
+        SnapshotStore snapshots = SnapshotStore.getInstance();
+        long startGeneration = snapshots.beginInstall();
+        long start = System.nanoTime();
+
+        Report restored = restore(snapshots, startGeneration, start);
+        if (restored != null) {
+            return restored;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(5, runnable -> {
+            Thread thread = new Thread(runnable, "warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<Timed<User>> users = executor.submit(() -> timed("users", new UserDAO()::loadUsers));
+            Future<Timed<Category>> categories = executor.submit(
+                    () -> timed("categories", new CategoryDAO()::loadCategories));
+            // The stored tables are read without the log lock so the loads really overlap;
+            // a commit or flush meanwhile changes the generation and install refuses the result
+            Future<Timed<Project>> projects = executor.submit(
+                    () -> timed("projects", new ProjectDAO()::readProjects));
+            Future<Timed<RewardTier>> tiers = executor.submit(
+                    () -> timed("rewardTiers", new RewardTierDAO()::readRewardTiers));
+            Future<Timed<Pledge>> pledges = executor.submit(() -> timed("pledges", new PledgeDAO()::readPledges));
+
+            List<TableTiming> timings = new ArrayList<>();
+            List<User> userRows = get(users, timings);
+            List<Category> categoryRows = get(categories, timings);
+            List<Project> projectRows = get(projects, timings);
+            List<RewardTier> tierRows = get(tiers, timings);
+            List<Pledge> pledgeRows = get(pledges, timings);
+
+            // Pending transactions go on top under the log lock; applying them is quick
+            boolean installed;
+            TransactionLog log = TransactionLog.getInstance();
+            synchronized (log) {
+                log.overlayProjects(projectRows);
+                log.overlayRewardTiers(tierRows);
+                log.overlayPledges(pledgeRows);
+                installed = snapshots.install(startGeneration, userRows, categoryRows, projectRows, pledgeRows);
+            }
+            if (installed) {
+                InventoryService.getInstance().preload(tierRows);
+                UserDAO.usersReloaded(userRows);
+            }
+            return new Report(timings, (System.nanoTime() - start) / 1_000_000, installed, null);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Publish the tables of the binary image, or return null if there is none to use
+     */
+    private static Report restore(SnapshotStore snapshots, long startGeneration, long start) throws IOException {
+        SnapshotFile.Tables tables = SnapshotFile.read();
+        if (tables == null) {
+            return null;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        InventoryService.getInstance().preload(tables.tiers);
+        UserDAO.usersReloaded(tables.users);
+        boolean installed = snapshots.install(startGeneration, tables.users, tables.categories, tables.projects,
+                tables.pledges);
+        if (installed) {
+            SnapshotFile.offerAggregates(tables);
+        }
+        String note = String.format("replayed %d pledges; reloaded: %s", tables.replayed.size(),
+                tables.reloaded.isEmpty() ? "none" : String.join(", ", tables.reloaded));
+        return new Report(Collections.singletonList(new TableTiming("snapshot", millis, tables.rowCount())),
+                (System.nanoTime() - start) / 1_000_000, installed, note);
+    }
+
+    private static class Timed<T> {
+        private final List<T> rows;
+        private final TableTiming timing;
+
+        Timed(List<T> rows, TableTiming timing) {
+            this.rows = rows;
+            this.timing = timing;
+        }
+    }
+
+    private static <T> Timed<T> timed(String table, TableLoader<T> loader) throws IOException {
+        long start = System.nanoTime();
+        List<T> rows = loader.load();
+        return new Timed<>(rows, new TableTiming(table, (System.nanoTime() - start) / 1_000_000, rows.size()));
+    }
+
+    private static <T> List<T> get(Future<Timed<T>> future, List<TableTiming> timings) throws IOException {
+        try {
+            Timed<T> result = future.get();
+            timings.add(result.timing);
+            return result.rows;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Warm-up interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Warm-up failed: " + cause, cause);
+        }
+    }
+}
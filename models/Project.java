@@ -2,6 +2,8 @@ package models;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Supplier;
 
 /**
  * Project model representing crowdfunding projects
@@ -19,6 +21,20 @@ public class Project {
 
     public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    // Source of the current day for the status methods; replaced by a cached clock at startup
+    private static volatile Supplier<LocalDate> today = LocalDate::now;
+
+    /**
+     * Set where the status methods read the current day from
+     */
+    public static void setDateSource(Supplier<LocalDate> source) {
+        today = source;
+    }
+
+    public static LocalDate today() {
+        return today.get();
+    }
+
     public Project() {
         this.currentAmount = 0.0;
     }
@@ -46,7 +62,7 @@ public class Project {
     }
 
     public boolean isValidDeadline(LocalDate deadline) {
-        return deadline != null && deadline.isAfter(LocalDate.now());
+        return deadline != null && deadline.isAfter(today());
     }
 
     // Calculate funding progress percentage
@@ -58,7 +74,11 @@ public class Project {
 
     // Check if project is still active
     public boolean isActive() {
-        return LocalDate.now().isBefore(deadline) || LocalDate.now().equals(deadline);
+        return isActive(today());
+    }
+
+    public boolean isActive(LocalDate today) {
+        return !today.isAfter(deadline);
     }
 
     // Check if project has reached its funding goal
@@ -68,9 +88,13 @@ public class Project {
 
     // Get project status string
     public String getProjectStatus() {
+        return getProjectStatus(today());
+    }
+
+    public String getProjectStatus(LocalDate today) {
         if (isFundingGoalReached()) {
             return "SUCCESS"; // Goal reached
-        } else if (isActive()) {
+        } else if (isActive(today)) {
             return "ACTIVE"; // Currently fundraising
         } else {
             return "FAILED"; // Deadline passed without reaching goal
@@ -79,13 +103,17 @@ public class Project {
 
     // Get detailed status description
     public String getStatusDescription() {
+        return getStatusDescription(today());
+    }
+
+    public String getStatusDescription(LocalDate today) {
         if (isFundingGoalReached()) {
-            if (isActive()) {
+            if (isActive(today)) {
                 return "Goal Reached (Still Accepting Pledges)";
             } else {
                 return "Project Successful";
             }
-        } else if (isActive()) {
+        } else if (isActive(today)) {
             return "Active Fundraising";
         } else {
             return "Project Failed";
@@ -94,9 +122,13 @@ public class Project {
 
     // Days remaining until deadline
     public long getDaysRemaining() {
-        if (!isActive())
+        return getDaysRemaining(today());
+    }
+
+    public long getDaysRemaining(LocalDate today) {
+        if (!isActive(today))
             return 0;
-        return LocalDate.now().until(deadline).getDays();
+        return ChronoUnit.DAYS.between(today, deadline);
     }
 
     // Getters and Setters
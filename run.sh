@@ -0,0 +1,49 @@
+#!/bin/sh
+# Build the client jar and start it, using the AppCDS archive when there is one
+#
+#   ./run.sh               start the client
+#   ./run.sh --cds-train   rebuild the jar and record out/app.jsa from a scripted session
+#                          on a temporary copy of the data files
+#
+# Both print "First frame after N ms", so the two runs give the time before and after.
+set -e
+cd "$(dirname "$0")"
+
+JAR=out/crowdfund.jar
+ARCHIVE=out/app.jsa
+
+build() {
+    rm -rf out/classes
+    mkdir -p out/classes
+    javac -d out/classes $(find . -name '*.java' -not -path './out/*')
+    jar --create --file "$JAR" --main-class Main -C out/classes .
+}
+
+if [ "$1" = "--cds-train" ]; then
+    build
+    rm -f "$ARCHIVE"
+    # The session logs in and writes snapshot.bin, so it runs on a scratch copy of the data
+    ROOT=$(pwd)
+    WORK=$(mktemp -d)
+    trap 'rm -rf "$WORK"' EXIT
+    for file in *.csv *.dat transactions.log snapshot.bin; do
+        if [ -f "$file" ]; then
+            cp -p "$file" "$WORK/"
+        fi
+    done
+    if [ -d pledges ]; then
+        cp -Rp pledges "$WORK/"
+    fi
+    (cd "$WORK" && java -XX:ArchiveClassesAtExit="$ROOT/$ARCHIVE" -jar "$ROOT/$JAR" --cds-train)
+    exit 0
+fi
+
+if [ ! -f "$JAR" ] || [ -n "$(find . -name '*.java' -newer "$JAR" -not -path './out/*')" ]; then
+    build
+fi
+
+# An archive older than the jar no longer matches it
+if [ -f "$ARCHIVE" ] && [ "$ARCHIVE" -nt "$JAR" ]; then
+    exec java -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR" "$@"
+fi
+exec java -jar "$JAR" "$@"
@@ -0,0 +1,242 @@
+package services;
+
+import models.Project;
+import data.SnapshotStore;
+import data.TransactionLog;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Current day and project status sets, advanced at each deadline
+ *
+ * The day is read from the clock once and cached until the next midnight,
+ * so status checks do not call LocalDate.now per row. Every project is kept
+ * in exactly one of the ACTIVE, SUCCESS and FAILED sets; commits move
+ * projects to SUCCESS and the midnight after a deadline moves unfunded
+ * projects to FAILED, so status filters and counts never scan the projects.
+ */
+public class DeadlineClock {
+    public static final String ACTIVE = "ACTIVE";
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+
+    /**
+     * What the clock knows about one project
+     */
+    private static class Tracked {
+        private final LocalDate deadline;
+        private String status;
+
+        Tracked(LocalDate deadline, String status) {
+            this.deadline = deadline;
+            this.status = status;
+        }
+    }
+
+    private final Clock clock;
+    private final EventBus eventBus;
+    private final SnapshotStore snapshots;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile LocalDate today;
+    private volatile long nextRolloverMillis;
+
+    private final Map<String, Tracked> projects = new HashMap<>();
+    // Projects still open for pledges, by deadline
+    private final TreeMap<LocalDate, Set<String>> closing = new TreeMap<>();
+    private final Map<String, Set<String>> byStatus = new HashMap<>();
+    private volatile int openCount;
+
+    public DeadlineClock(Clock clock, EventBus eventBus) {
+        this.clock = clock;
+        this.eventBus = eventBus;
+        this.snapshots = SnapshotStore.getInstance();
+        for (String status : List.of(ACTIVE, SUCCESS, FAILED)) {
+            byStatus.put(status, ConcurrentHashMap.newKeySet());
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "deadline-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        advanceDay();
+    }
+
+    /**
+     * Load the projects, make Project's status methods use this clock and start the midnight timer
+     */
+    public void start() throws IOException {
+        load(snapshots.current().getProjects());
+        Project.setDateSource(this::today);
+        scheduleRollover();
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Current day in the clock's time zone
+     */
+    public LocalDate today() {
+        // Catches up if the timer ran late, e.g. after the machine slept
+        if (clock.millis() >= nextRolloverMillis) {
+            rollover();
+        }
+        return today;
+    }
+
+    /**
+     * Replace every tracked project, e.g. after the projects table was reloaded
+     */
+    public synchronized void load(Collection<Project> all) {
+        projects.clear();
+        closing.clear();
+        for (Set<String> ids : byStatus.values()) {
+            ids.clear();
+        }
+        int open = 0;
+        for (Project project : all) {
+            Tracked tracked = new Tracked(project.getDeadline(), project.getProjectStatus(today));
+            projects.put(project.getProjectId(), tracked);
+            byStatus.get(tracked.status).add(project.getProjectId());
+            if (project.isActive(today)) {
+                closing.computeIfAbsent(tracked.deadline, d -> new HashSet<>()).add(project.getProjectId());
+                open++;
+            }
+        }
+        openCount = open;
+    }
+
+    /**
+     * Move a changed project to the set for its new status, e.g. after a pledge reached its goal
+     */
+    public void projectUpdated(Project project) {
+        synchronized (this) {
+            Tracked tracked = projects.get(project.getProjectId());
+            if (tracked != null && tracked.deadline.equals(project.getDeadline())) {
+                move(project.getProjectId(), tracked, project.getProjectStatus(today));
+                return;
+            }
+        }
+        // New project or moved deadline; rare, so rebuild from the latest version
+        Map<String, Project> latest = new LinkedHashMap<>();
+        try {
+            for (Project p : snapshots.current().getProjects()) {
+                latest.put(p.getProjectId(), p);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not reload projects for deadline tracking: " + e.getMessage());
+        }
+        latest.put(project.getProjectId(), project);
+        load(latest.values());
+    }
+
+    /**
+     * IDs of the projects with a status from Project.getProjectStatus, as a live read-only view
+     */
+    public Set<String> getProjectIds(String status) {
+        Set<String> ids = byStatus.get(status);
+        return ids != null ? Collections.unmodifiableSet(ids) : Collections.emptySet();
+    }
+
+    public String getStatus(String projectId) {
+        Tracked tracked;
+        synchronized (this) {
+            tracked = projects.get(projectId);
+        }
+        return tracked != null ? tracked.status : null;
+    }
+
+    /**
+     * Projects whose deadline has not passed, whatever their funding
+     */
+    public int getOpenCount() {
+        return openCount;
+    }
+
+    public int getCount(String status) {
+        return getProjectIds(status).size();
+    }
+
+    /**
+     * Advance the day and close the projects whose deadline has passed
+     */
+    private void rollover() {
+        List<String> closed = new ArrayList<>();
+        synchronized (this) {
+            if (clock.millis() < nextRolloverMillis) {
+                return;
+            }
+            advanceDay();
+            // A project is active through its deadline day
+            NavigableMap<LocalDate, Set<String>> due = closing.headMap(today, false);
+            for (Set<String> ids : due.values()) {
+                for (String id : ids) {
+                    Tracked tracked = projects.get(id);
+                    openCount--;
+                    if (ACTIVE.equals(tracked.status)) {
+                        move(id, tracked, FAILED);
+                        closed.add(id);
+                    }
+                }
+            }
+            due.clear();
+        }
+        publishClosed(closed);
+    }
+
+    private void advanceDay() {
+        today = LocalDate.now(clock);
+        nextRolloverMillis = today.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+    }
+
+    private void move(String projectId, Tracked tracked, String status) {
+        if (!status.equals(tracked.status)) {
+            byStatus.get(tracked.status).remove(projectId);
+            byStatus.get(status).add(projectId);
+            tracked.status = status;
+        }
+    }
+
+    /**
+     * Let views show the new status of projects that just failed
+     */
+    private void publishClosed(List<String> closed) {
+        if (closed.isEmpty() || eventBus == null) {
+            return;
+        }
+        // Under the log lock, like commits, so a pledge's newer total cannot be overtaken
+        try {
+            synchronized (TransactionLog.getInstance()) {
+                for (String id : closed) {
+                    Project project = snapshots.current().getProject(id);
+                    if (project != null) {
+                        eventBus.publish(new EventBus.ProjectUpdated(project));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not publish closed projects: " + e.getMessage());
+        }
+    }
+
+    private void scheduleRollover() {
+        long delay = Math.max(0, nextRolloverMillis - clock.millis());
+        scheduler.schedule(() -> {
+            try {
+                today();
+            } finally {
+                if (!scheduler.isShutdown()) {
+                    scheduleRollover();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+}
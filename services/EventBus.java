@@ -0,0 +1,119 @@
+package services;
+
+import models.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process publish/subscribe bus for domain changes
+ *
+ * Services publish an event after a change is committed; views and caches
+ * subscribe to the event types they care about and apply the delta instead
+ * of re-reading the tables. Subscribers run on the publishing thread, so
+ * Swing subscribers hand the work to the event dispatch thread themselves.
+ * ProjectUpdated and TierQuantityChanged are published while the
+ * transaction log is locked, so they arrive in commit order; their
+ * subscribers must not wait for a lock held while taking the log lock.
+ */
+public class EventBus {
+    /**
+     * Marker for events published on the bus
+     */
+    public interface Event {
+    }
+
+    /**
+     * A pledge was committed
+     */
+    public static class PledgeAccepted implements Event {
+        private final Pledge pledge;
+
+        public PledgeAccepted(Pledge pledge) {
+            this.pledge = pledge;
+        }
+
+        public Pledge getPledge() {
+            return pledge;
+        }
+    }
+
+    /**
+     * A project changed, e.g. its current amount after a pledge
+     */
+    public static class ProjectUpdated implements Event {
+        private final Project project;
+
+        public ProjectUpdated(Project project) {
+            this.project = project;
+        }
+
+        public Project getProject() {
+            return project;
+        }
+    }
+
+    /**
+     * The remaining quantity of a reward tier changed
+     */
+    public static class TierQuantityChanged implements Event {
+        private final String tierId;
+        private final String projectId;
+        private final int remainingQuantity;
+
+        public TierQuantityChanged(String tierId, String projectId, int remainingQuantity) {
+            this.tierId = tierId;
+            this.projectId = projectId;
+            this.remainingQuantity = remainingQuantity;
+        }
+
+        public String getTierId() {
+            return tierId;
+        }
+
+        public String getProjectId() {
+            return projectId;
+        }
+
+        public int getRemainingQuantity() {
+            return remainingQuantity;
+        }
+    }
+
+    private final Map<Class<? extends Event>, List<Consumer<? super Event>>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Receive every event of the given class (subclasses are not matched)
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Event> void subscribe(Class<E> type, Consumer<? super E> subscriber) {
+        subscribers.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>())
+                .add((Consumer<? super Event>) subscriber);
+    }
+
+    public <E extends Event> void unsubscribe(Class<E> type, Consumer<? super E> subscriber) {
+        List<Consumer<? super Event>> list = subscribers.get(type);
+        if (list != null) {
+            list.remove(subscriber);
+        }
+    }
+
+    /**
+     * Deliver an event to the subscribers of its type
+     */
+    public void publish(Event event) {
+        List<Consumer<? super Event>> list = subscribers.get(event.getClass());
+        if (list == null) {
+            return;
+        }
+        for (Consumer<? super Event> subscriber : list) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException e) {
+                // One failing subscriber must not undo a committed change for the others
+                System.err.println("Event subscriber failed for " + event.getClass().getSimpleName() + ": " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package services;
+
+import models.*;
+import data.*;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Bulk import of pledges exported by partner platforms
+ *
+ * The input is streamed in batches. Each batch is parsed and checked against
+ * in-memory users, projects and tiers on a worker pool; the rules that depend
+ * on earlier pledges, tier stock and project totals, are then applied in file
+ * order, so every run decides a project's pledges in the same order. A
+ * batch's accepted pledges are committed with one transaction log write and
+ * one table flush, and its rejected rows are stored as REJECTED pledges with
+ * their reason. Project totals are read once and carried from batch to batch;
+ * the caller must hold the DataDirectoryLock, so no other process commits
+ * pledges meanwhile.
+ */
+public class PledgeImportService {
+    public static final String[] HEADERS = { "userId", "projectId", "pledgeTime", "amount", "rewardTierId" };
+    private static final int BATCH_SIZE = Integer.getInteger("crowdfund.importBatchSize", 10_000);
+    private static final int THREADS = Integer.getInteger("crowdfund.importThreads",
+            Runtime.getRuntime().availableProcessors());
+    // Rejected rows listed by line number in the report
+    private static final int SAMPLE_LIMIT = 20;
+
+    /**
+     * Counts, timings and rejection reasons of one import
+     */
+    public static class ImportReport {
+        private long rows;
+        private long imported;
+        private long rejected;
+        private int batches;
+        private long validateNanos;
+        private long commitNanos;
+        private long totalMillis;
+        private final Map<String, Long> rejectionsByReason = new TreeMap<>();
+        private final List<String> samples = new ArrayList<>();
+
+        private void rejected(long line, String reason) {
+            rejected++;
+            rejectionsByReason.merge(reason, 1L, Long::sum);
+            if (samples.size() < SAMPLE_LIMIT) {
+                samples.add("line " + line + ": " + reason);
+            }
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public int getBatches() {
+            return batches;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public double getRowsPerSecond() {
+            return totalMillis > 0 ? rows * 1000.0 / totalMillis : rows;
+        }
+
+        public Map<String, Long> getRejectionsByReason() {
+            return Collections.unmodifiableMap(rejectionsByReason);
+        }
+
+        /**
+         * The first rejected rows, as "line N: reason"
+         */
+        public List<String> getSamples() {
+            return Collections.unmodifiableList(samples);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format(
+                    "Imported %d of %d rows in %d ms (%.0f rows/s, %d batches)", imported, rows, totalMillis,
+                    getRowsPerSecond(), batches));
+            text.append(String.format("%n  validation %d ms, commits %d ms", validateNanos / 1_000_000,
+                    commitNanos / 1_000_000));
+            if (rejected > 0) {
+                text.append(String.format("%n  rejected %d:", rejected));
+                for (Map.Entry<String, Long> entry : rejectionsByReason.entrySet()) {
+                    text.append(String.format("%n    %8d  %s", entry.getValue(), entry.getKey()));
+                }
+                for (String sample : samples) {
+                    text.append(String.format("%n  %s", sample));
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * One input row and the outcome of the checks made so far
+     */
+    private static class Row {
+        private final long line;
+        private final String[] record;
+        private Pledge pledge;
+        private RewardTier tier;
+        private String reason; // Set once the row is rejected
+
+        Row(long line, String[] record) {
+            this.line = line;
+            this.record = record;
+        }
+    }
+
+    private final StatisticsService statisticsService;
+    private final EventBus eventBus;
+    private final PledgeDAO pledgeDAO;
+    private final ProjectDAO projectDAO;
+    private final InventoryService inventory;
+
+    public PledgeImportService(StatisticsService statisticsService, EventBus eventBus) {
+        this.statisticsService = statisticsService;
+        this.eventBus = eventBus;
+        this.pledgeDAO = new PledgeDAO();
+        this.projectDAO = new ProjectDAO();
+        this.inventory = InventoryService.getInstance();
+    }
+
+    /**
+     * Import a CSV file with the HEADERS columns; an empty pledgeTime means the time of the import
+     * Batches committed before an IOException stay imported
+     */
+    public ImportReport importFile(String filename) throws IOException {
+        if (!new File(filename).isFile()) {
+            throw new FileNotFoundException("Import file not found: " + filename);
+        }
+        long start = System.nanoTime();
+        ImportReport report = new ImportReport();
+
+        // Users and projects are pinned for the whole import, so batches do not rebuild the snapshot
+        DataSnapshot snapshot = SnapshotStore.getInstance().current();
+        Map<String, RewardTier> tiers = new HashMap<>();
+        for (RewardTier tier : new RewardTierDAO().loadRewardTiers()) {
+            tiers.put(tier.getTierId(), tier);
+        }
+        Map<String, Project> projects = new HashMap<>();
+        synchronized (TransactionLog.getInstance()) {
+            for (Project project : projectDAO.loadProjects()) {
+                projects.put(project.getProjectId(), project);
+            }
+        }
+        LocalDateTime importTime = LocalDateTime.now().withNano(0);
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, THREADS));
+        try (Stream<String[]> records = CSVUtil.streamRecords(filename)) {
+            Iterator<String[]> input = records.iterator();
+            long line = 0;
+            List<Row> batch = new ArrayList<>(BATCH_SIZE);
+            while (input.hasNext()) {
+                String[] record = input.next();
+                line++;
+                if (line == 1 && record.length > 0 && record[0].equals(HEADERS[0])) {
+                    continue;
+                }
+                batch.add(new Row(line, record));
+                if (batch.size() == BATCH_SIZE) {
+                    importBatch(batch, snapshot, tiers, projects, importTime, pool, report);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            importBatch(batch, snapshot, tiers, projects, importTime, pool, report);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+            // The snapshot and the incremental aggregates are rebuilt from storage on next use
+            SnapshotStore.getInstance().invalidate();
+            statisticsService.pledgesReloaded();
+            report.totalMillis = (System.nanoTime() - start) / 1_000_000;
+        }
+        return report;
+    }
+
+    private void importBatch(List<Row> batch, DataSnapshot snapshot, Map<String, RewardTier> tiers,
+            Map<String, Project> projects, LocalDateTime importTime, ForkJoinPool pool, ImportReport report) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long validateStart = System.nanoTime();
+        try {
+            pool.submit(() -> IntStream.range(0, batch.size()).parallel()
+                    .forEach(i -> validate(batch.get(i), snapshot, tiers, importTime))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import validation failed", e.getCause());
+        }
+        long commitStart = System.nanoTime();
+        report.validateNanos += commitStart - validateStart;
+
+        commit(batch, projects, report);
+        report.rows += batch.size();
+        report.batches++;
+        report.commitNanos += System.nanoTime() - commitStart;
+    }
+
+    /**
+     * Parse a row and apply the rules that do not depend on other pledges; runs on the worker pool
+     */
+    private void validate(Row row, DataSnapshot snapshot, Map<String, RewardTier> tiers, LocalDateTime importTime) {
+        String[] record = row.record;
+        Pledge pledge = new Pledge();
+        row.pledge = pledge;
+        pledge.setUserId(field(record, 0));
+        pledge.setProjectId(field(record, 1));
+        pledge.setRewardTierId(field(record, 4).isEmpty() ? null : field(record, 4));
+        pledge.setAmount(0);
+        pledge.setPledgeTime(importTime);
+
+        if (record.length < 4) {
+            row.reason = "Malformed row";
+            return;
+        }
+        try {
+            pledge.setAmount(Double.parseDouble(field(record, 3)));
+        } catch (NumberFormatException e) {
+            row.reason = "Invalid amount";
+            return;
+        }
+        if (!field(record, 2).isEmpty()) {
+            try {
+                pledge.setPledgeTime(LocalDateTime.parse(field(record, 2), Pledge.DATETIME_FORMAT));
+            } catch (DateTimeParseException e) {
+                row.reason = "Invalid pledge time";
+                return;
+            }
+        }
+
+        if (snapshot.getUser(pledge.getUserId()) == null) {
+            row.reason = "User not found";
+            return;
+        }
+        Project project = snapshot.getProject(pledge.getProjectId());
+        if (project == null) {
+            row.reason = "Project not found";
+            return;
+        }
+        // Imported pledges are historical, so the deadline is checked against the pledge time
+        if (pledge.getPledgeTime().toLocalDate().isAfter(project.getDeadline())) {
+            row.reason = "Project deadline has passed";
+            return;
+        }
+        if (pledge.getAmount() <= 0) {
+            row.reason = "Pledge amount must be greater than 0";
+            return;
+        }
+        if (pledge.getRewardTierId() != null) {
+            RewardTier tier = tiers.get(pledge.getRewardTierId());
+            if (tier == null || !tier.getProjectId().equals(project.getProjectId())) {
+                row.reason = "Selected reward tier not found";
+                return;
+            }
+            if (pledge.getAmount() < tier.getMinimumAmount()) {
+                row.reason = String.format("Minimum amount for '%s' is $%.2f", tier.getName(),
+                        tier.getMinimumAmount());
+                return;
+            }
+            row.tier = tier;
+        }
+    }
+
+    /**
+     * Apply tier stock and project totals in file order and commit the batch
+     */
+    private void commit(List<Row> batch, Map<String, Project> projects, ImportReport report) throws IOException {
+        List<String> ids = pledgeDAO.nextPledgeIds(batch.size());
+        List<TransactionLog.PledgeTransaction> accepted = new ArrayList<>();
+        List<InventoryService.Reservation> reservations = new ArrayList<>();
+        List<Pledge> rejected = new ArrayList<>();
+        Map<String, Project> touchedProjects = new LinkedHashMap<>();
+        Map<String, Integer> touchedTiers = new LinkedHashMap<>();
+        Map<String, String> tierProjects = new HashMap<>();
+
+        TransactionLog log = TransactionLog.getInstance();
+        synchronized (log) {
+            // Only commits change stock, and they all hold the log lock
+            for (int i = 0; i < batch.size(); i++) {
+                Row row = batch.get(i);
+                Pledge pledge = row.pledge;
+                pledge.setPledgeId(ids.get(i));
+                Project project = projects.get(pledge.getProjectId());
+                if (row.reason == null && project == null) {
+                    row.reason = "Project not found";
+                }
+                InventoryService.Reservation reservation = null;
+                if (row.reason == null && row.tier != null) {
+                    reservation = inventory.reserve(row.tier.getTierId());
+                    if (reservation == null) {
+                        row.reason = String.format("Reward tier '%s' is no longer available", row.tier.getName());
+                    }
+                }
+                if (row.reason != null) {
+                    pledge.reject(row.reason);
+                    rejected.add(pledge);
+                    report.rejected(row.line, row.reason);
+                    continue;
+                }
+
+                project.setCurrentAmount(project.getCurrentAmount() + pledge.getAmount());
+                touchedProjects.put(project.getProjectId(), project);
+                String tierId = null;
+                int remaining = 0;
+                if (reservation != null) {
+                    reservations.add(reservation);
+                    tierId = reservation.getTierId();
+                    Integer previous = touchedTiers.get(tierId);
+                    remaining = (previous != null ? previous : inventory.getRemaining(tierId)) - 1;
+                    touchedTiers.put(tierId, remaining);
+                    tierProjects.put(tierId, row.tier.getProjectId());
+                }
+                accepted.add(new TransactionLog.PledgeTransaction(pledge, project.getProjectId(),
+                        project.getCurrentAmount(), tierId, remaining));
+            }
+
+            try {
+                log.commitBatch(accepted);
+            } catch (IOException e) {
+                reservations.forEach(InventoryService.Reservation::release);
+                throw e;
+            }
+            reservations.forEach(InventoryService.Reservation::confirm);
+            report.imported += accepted.size();
+
+            log.flush();
+            pledgeDAO.appendPledges(rejected);
+
+            // Let the deadline clock, validation cache and views pick up the new totals, in commit order
+            for (Project project : touchedProjects.values()) {
+                eventBus.publish(new EventBus.ProjectUpdated(project));
+            }
+            for (Map.Entry<String, Integer> tier : touchedTiers.entrySet()) {
+                eventBus.publish(new EventBus.TierQuantityChanged(tier.getKey(), tierProjects.get(tier.getKey()),
+                        tier.getValue()));
+            }
+        }
+    }
+
+    private static String field(String[] record, int index) {
+        return index < record.length ? record[index].trim() : "";
+    }
+}
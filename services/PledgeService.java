@@ -0,0 +1,260 @@
+package services;
+
+import models.*;
+import data.*;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Pledge Service - pledge business logic and validation without UI
+ * Safe to call from many sessions at once: tier units are claimed atomically
+ * and each commit applies its amount to the latest committed project total
+ */
+public class PledgeService {
+    private PledgeDAO pledgeDAO;
+    private InventoryService inventory;
+    private RejectedPledgeWriter rejectedWriter;
+    private ValidationCache validationCache;
+    private SnapshotStore snapshots;
+    private StatisticsService statisticsService;
+    private EventBus eventBus;
+
+    public PledgeService(StatisticsService statisticsService, EventBus eventBus, ValidationCache validationCache) {
+        this.pledgeDAO = new PledgeDAO();
+        this.inventory = InventoryService.getInstance();
+        this.rejectedWriter = RejectedPledgeWriter.getInstance();
+        this.snapshots = SnapshotStore.getInstance();
+        this.statisticsService = statisticsService;
+        this.eventBus = eventBus;
+        this.validationCache = validationCache;
+    }
+
+    /**
+     * Process a new pledge for the user of a context with business rule validation
+     */
+    public PledgeResult processPledge(UserContext context, String projectId, double amount, String rewardTierId) {
+        if (context == null) {
+            return new PledgeResult(false, "User not logged in");
+        }
+        User currentUser = context.getUser();
+
+        // Ended projects and sold-out tiers are rejected from memory, without reading storage
+        String reason = validationCache.rejectionReason(projectId, amount, rewardTierId);
+        if (reason != null) {
+            return reject(currentUser, projectId, amount, rewardTierId, reason);
+        }
+
+        try {
+            // Read the project from the pinned snapshot; storage is not touched per pledge
+            Project project = snapshots.current().getProject(projectId);
+            if (project == null) {
+                return reject(currentUser, projectId, amount, rewardTierId, "Project not found");
+            }
+
+            // Business Rule 1: Project deadline must be in the future
+            if (!project.isActive()) {
+                return reject(currentUser, projectId, amount, rewardTierId, "Project deadline has passed");
+            }
+
+            // Business Rule 2: Amount must be positive
+            if (amount <= 0) {
+                return reject(currentUser, projectId, amount, rewardTierId, "Pledge amount must be greater than 0");
+            }
+
+            // Business Rule 3: If reward tier is selected, amount must meet minimum
+            RewardTier selectedTier = null;
+            InventoryService.Reservation reservation = null;
+            if (rewardTierId != null && !rewardTierId.isEmpty()) {
+                selectedTier = inventory.getTier(rewardTierId);
+                if (selectedTier == null) {
+                    return reject(currentUser, projectId, amount, rewardTierId, "Selected reward tier not found");
+                }
+
+                if (amount < selectedTier.getMinimumAmount()) {
+                    return reject(currentUser, projectId, amount, rewardTierId,
+                            String.format("Minimum amount for '%s' is $%.2f",
+                                    selectedTier.getName(), selectedTier.getMinimumAmount()));
+                }
+
+                // Claim a unit in memory; concurrent pledges cannot both get the last one
+                reservation = inventory.reserve(rewardTierId);
+                if (reservation == null) {
+                    return reject(currentUser, projectId, amount, rewardTierId,
+                            String.format("Reward tier '%s' is no longer available",
+                                    selectedTier.getName()));
+                }
+            }
+
+            // Create and save pledge
+            String pledgeId;
+            try {
+                pledgeId = pledgeDAO.nextPledgeId();
+            } catch (IOException e) {
+                if (reservation != null) {
+                    reservation.release();
+                }
+                throw e;
+            }
+            Pledge pledge = new Pledge();
+            pledge.setPledgeId(pledgeId);
+            pledge.setUserId(currentUser.getUserId());
+            pledge.setProjectId(projectId);
+            pledge.setPledgeTime(LocalDateTime.now());
+            pledge.setAmount(amount);
+            pledge.setRewardTierId(rewardTierId);
+            pledge.setStatus(Pledge.PledgeStatus.SUCCESS);
+
+            // Commit the pledge, project and tier together; the tables are rewritten later in a batch
+            TransactionLog log = TransactionLog.getInstance();
+            Project updated;
+            synchronized (log) {
+                try {
+                    // Read the total under the log lock so concurrent pledges to one project add up
+                    // Snapshot projects are shared, so the new total goes on a copy
+                    Project committed = snapshots.current().getProject(projectId);
+                    if (committed == null) {
+                        committed = project;
+                    }
+                    updated = new Project(committed.getProjectId(), committed.getName(), committed.getGoalAmount(),
+                            committed.getDeadline(), committed.getCategoryId(), committed.getDescription(),
+                            committed.getCreatorId());
+                    updated.setCurrentAmount(committed.getCurrentAmount() + amount);
+
+                    // Confirming inside the commit keeps logged tier quantities in commit order
+                    if (reservation != null) {
+                        selectedTier.setRemainingQuantity(reservation.confirm());
+                    }
+                    log.commit(new TransactionLog.PledgeTransaction(pledge, updated, selectedTier));
+                } catch (IOException e) {
+                    if (reservation != null) {
+                        reservation.release();
+                    }
+                    throw e;
+                }
+
+                // Published before the lock is released so views see totals in commit order
+                eventBus.publish(new EventBus.ProjectUpdated(updated));
+                if (selectedTier != null) {
+                    eventBus.publish(new EventBus.TierQuantityChanged(selectedTier.getTierId(), projectId,
+                            selectedTier.getRemainingQuantity()));
+                }
+            }
+
+            // Statistics take their own lock and may rebuild the snapshot, so this one waits for the log lock
+            eventBus.publish(new EventBus.PledgeAccepted(pledge));
+
+            return new PledgeResult(true, "Pledge successful! Thank you for your support.");
+
+        } catch (IOException e) {
+            return new PledgeResult(false, "Error processing pledge: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record a pledge that failed validation and build its result
+     * The pledge is stored later by the background writer, so rejecting stays cheap
+     */
+    private PledgeResult reject(User user, String projectId, double amount, String rewardTierId, String reason) {
+        Pledge pledge = new Pledge();
+        pledge.setUserId(user.getUserId());
+        pledge.setProjectId(projectId);
+        pledge.setAmount(amount);
+        pledge.setRewardTierId(rewardTierId != null && !rewardTierId.isEmpty() ? rewardTierId : null);
+        pledge.reject(reason);
+        rejectedWriter.submit(pledge);
+        return new PledgeResult(false, reason);
+    }
+
+    /**
+     * Get pledges for a user
+     */
+    public List<Pledge> getUserPledges(String userId) throws IOException {
+        return pledgeDAO.findByUser(userId);
+    }
+
+    /**
+     * Get pledges for a project
+     */
+    public List<Pledge> getProjectPledges(String projectId) throws IOException {
+        return pledgeDAO.findByProject(projectId);
+    }
+
+    /**
+     * Get successful pledges statistics
+     */
+    public PledgeStatistics getPledgeStatistics() throws IOException {
+        List<Pledge> allPledges = pledgeDAO.loadPledges();
+        return new PledgeStatistics(allPledges, statisticsService.getUniqueBackersOverall());
+    }
+
+    /**
+     * Result class for pledge processing
+     */
+    public static class PledgeResult {
+        private boolean success;
+        private String message;
+
+        public PledgeResult(boolean success, String message) {
+            this.success = success;
+            this.message = message;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Statistics class for pledge data
+     */
+    public static class PledgeStatistics {
+        private int totalPledges;
+        private int successfulPledges;
+        private int rejectedPledges;
+        private double totalAmountRaised;
+        private double averagePledgeAmount;
+        private int uniqueBackers;
+
+        public PledgeStatistics(List<Pledge> pledges, int uniqueBackers) {
+            this.totalPledges = pledges.size();
+            this.successfulPledges = (int) pledges.stream().filter(Pledge::isSuccessful).count();
+            this.rejectedPledges = (int) pledges.stream().filter(Pledge::isRejected).count();
+            this.totalAmountRaised = pledges.stream()
+                    .filter(Pledge::isSuccessful)
+                    .mapToDouble(Pledge::getAmount)
+                    .sum();
+            this.averagePledgeAmount = successfulPledges > 0 ? totalAmountRaised / successfulPledges : 0;
+            this.uniqueBackers = uniqueBackers;
+        }
+
+        // Getters
+        public int getTotalPledges() {
+            return totalPledges;
+        }
+
+        public int getSuccessfulPledges() {
+            return successfulPledges;
+        }
+
+        public int getRejectedPledges() {
+            return rejectedPledges;
+        }
+
+        public double getTotalAmountRaised() {
+            return totalAmountRaised;
+        }
+
+        public double getAveragePledgeAmount() {
+            return averagePledgeAmount;
+        }
+
+        public int getUniqueBackers() {
+            return uniqueBackers;
+        }
+    }
+}
\ No newline at end of file
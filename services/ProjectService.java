@@ -0,0 +1,232 @@
+package services;
+
+import models.*;
+import data.*;
+import analytics.TopK;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Project Service - project-related business logic without UI
+ * Holds no per-user state, so one instance serves all sessions
+ */
+public class ProjectService {
+    private ProjectDAO projectDAO;
+    private SnapshotStore snapshots;
+    private RewardTierDAO rewardTierDAO;
+    private PledgeDAO pledgeDAO;
+    private StatisticsService statisticsService;
+    private DeadlineClock deadlineClock;
+
+    public ProjectService(StatisticsService statisticsService, DeadlineClock deadlineClock) {
+        this.statisticsService = statisticsService;
+        this.deadlineClock = deadlineClock;
+        this.projectDAO = new ProjectDAO();
+        this.snapshots = SnapshotStore.getInstance();
+        this.rewardTierDAO = new RewardTierDAO();
+        this.pledgeDAO = new PledgeDAO();
+    }
+
+    /**
+     * Get all projects
+     */
+    public List<Project> getAllProjects() throws IOException {
+        return projectDAO.loadProjects();
+    }
+
+    /**
+     * Get project by ID
+     */
+    public Project getProject(String projectId) throws IOException {
+        return projectDAO.findById(projectId);
+    }
+
+    /**
+     * Get projects by category
+     */
+    public List<Project> getProjectsByCategory(String categoryId) throws IOException {
+        if (categoryId == null || categoryId.isEmpty()) {
+            return getAllProjects();
+        }
+        return projectDAO.findByCategory(categoryId);
+    }
+
+    /**
+     * Get projects by status (ACTIVE, SUCCESS or FAILED), from the maintained status sets
+     */
+    public List<Project> getProjectsByStatus(String status) throws IOException {
+        DataSnapshot snapshot = snapshots.current();
+        List<Project> projects = new ArrayList<>();
+        for (String projectId : deadlineClock.getProjectIds(status)) {
+            Project project = snapshot.getProject(projectId);
+            if (project != null) {
+                projects.add(project);
+            }
+        }
+        return projects;
+    }
+
+    /**
+     * Search projects by name
+     */
+    public List<Project> searchProjects(String searchTerm) throws IOException {
+        List<Project> allProjects = getAllProjects();
+        if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            return allProjects;
+        }
+
+        String term = searchTerm.toLowerCase();
+        return allProjects.stream()
+                .filter(p -> p.getName().toLowerCase().contains(term) ||
+                        p.getDescription().toLowerCase().contains(term))
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    }
+
+    /**
+     * Sort projects by different criteria
+     */
+    public List<Project> sortProjects(List<Project> projects, String sortBy) {
+        List<Project> sorted = new ArrayList<>(projects);
+        sorted.sort(projectOrder(sortBy));
+        return sorted;
+    }
+
+    /**
+     * Get one page of projects matching the filters, in the chosen sort order
+     * Projects are streamed from storage and only those up to the end of the
+     * page are kept, in a bounded heap
+     */
+    public Page<Project> getProjectPage(String categoryId, String searchTerm, String sortBy, int offset, int limit)
+            throws IOException {
+        String term = searchTerm != null ? searchTerm.trim().toLowerCase() : "";
+        try (Stream<Project> projects = categoryId == null || categoryId.isEmpty()
+                ? projectDAO.streamProjects()
+                : projectDAO.streamByCategory(categoryId)) {
+            Stream<Project> matches = projects
+                    .filter(p -> term.isEmpty() || p.getName().toLowerCase().contains(term) ||
+                            p.getDescription().toLowerCase().contains(term));
+
+            List<Project> leading = TopK.select(matches::iterator, offset + limit + 1,
+                    projectOrder(sortBy).reversed());
+            int from = Math.min(offset, leading.size());
+            int to = Math.min(offset + limit, leading.size());
+            return new Page<>(new ArrayList<>(leading.subList(from, to)), offset, leading.size() > offset + limit);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sort order for a sort option; ties go by project ID so pages never overlap
+     */
+    private Comparator<Project> projectOrder(String sortBy) {
+        Comparator<Project> order;
+        switch (sortBy != null ? sortBy.toLowerCase() : "") {
+            case "newest":
+                // Since we don't have creation date, sort by project ID (newer IDs = newer
+                // projects)
+                return Comparator.comparing(Project::getProjectId).reversed();
+            case "deadline":
+                order = Comparator.comparing(Project::getDeadline);
+                break;
+            case "funding":
+                order = Comparator.comparingDouble(Project::getCurrentAmount).reversed();
+                break;
+            case "progress":
+                order = Comparator.comparingDouble(Project::getFundingProgress).reversed();
+                break;
+            default:
+                // Default sort by name
+                order = Comparator.comparing(Project::getName);
+        }
+        return order.thenComparing(Project::getProjectId);
+    }
+
+    /**
+     * Get all categories
+     */
+    public List<Category> getAllCategories() throws IOException {
+        return new ArrayList<>(snapshots.current().getCategories());
+    }
+
+    /**
+     * Get category by ID
+     */
+    public Category getCategory(String categoryId) throws IOException {
+        return snapshots.current().getCategory(categoryId);
+    }
+
+    /**
+     * Get reward tiers for a project
+     */
+    public List<RewardTier> getRewardTiers(String projectId) throws IOException {
+        List<RewardTier> tiers = rewardTierDAO.findByProject(projectId);
+        // Include sales not yet flushed to the files
+        InventoryService.getInstance().applyTo(tiers);
+        return tiers;
+    }
+
+    /**
+     * Get project statistics
+     */
+    public ProjectStatistics getProjectStatistics(String projectId) throws IOException {
+        Project project = projectDAO.findById(projectId);
+        if (project == null)
+            return null;
+
+        List<Pledge> pledges = pledgeDAO.findByProject(projectId);
+        List<RewardTier> tiers = rewardTierDAO.findByProject(projectId);
+        InventoryService.getInstance().applyTo(tiers);
+
+        return new ProjectStatistics(project, pledges, tiers,
+                statisticsService.getUniqueBackers(projectId));
+    }
+
+    /**
+     * Inner class for project statistics
+     */
+    public static class ProjectStatistics {
+        private Project project;
+        private int totalPledges;
+        private int successfulPledges;
+        private int rejectedPledges;
+        private double totalAmount;
+        private int totalBackers;
+
+        public ProjectStatistics(Project project, List<Pledge> pledges, List<RewardTier> tiers, int totalBackers) {
+            this.project = project;
+            this.totalPledges = pledges.size();
+            this.successfulPledges = (int) pledges.stream().filter(Pledge::isSuccessful).count();
+            this.rejectedPledges = (int) pledges.stream().filter(Pledge::isRejected).count();
+            this.totalAmount = pledges.stream().filter(Pledge::isSuccessful).mapToDouble(Pledge::getAmount).sum();
+            this.totalBackers = totalBackers;
+        }
+
+        // Getters
+        public Project getProject() {
+            return project;
+        }
+
+        public int getTotalPledges() {
+            return totalPledges;
+        }
+
+        public int getSuccessfulPledges() {
+            return successfulPledges;
+        }
+
+        public int getRejectedPledges() {
+            return rejectedPledges;
+        }
+
+        public double getTotalAmount() {
+            return totalAmount;
+        }
+
+        public int getTotalBackers() {
+            return totalBackers;
+        }
+    }
+}
\ No newline at end of file
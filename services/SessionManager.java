@@ -0,0 +1,106 @@
+package services;
+
+import models.User;
+import data.UserDAO;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory sessions keyed by random tokens
+ *
+ * The password is checked once per login; later requests present the token
+ * and skip authentication until the session has been idle for longer than
+ * -Dcrowdfund.sessionMinutes (default 30).
+ */
+public class SessionManager {
+    private static final long IDLE_MILLIS = Long.getLong("crowdfund.sessionMinutes", 30) * 60_000;
+    private static final int TOKEN_BYTES = 32;
+
+    /**
+     * Authenticated user behind a token
+     */
+    public static class Session {
+        private final String token;
+        private final User user;
+        private volatile long lastUsed;
+
+        Session(String token, User user, long now) {
+            this.token = token;
+            this.user = user;
+            this.lastUsed = now;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public User getUser() {
+            return user;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final UserDAO userDAO;
+
+    public SessionManager(UserDAO userDAO) {
+        this.userDAO = userDAO;
+    }
+
+    /**
+     * Check the credentials and open a session, or return null if they are wrong
+     */
+    public Session login(String username, String password) throws IOException {
+        User user = userDAO.authenticate(username, password);
+        if (user == null) {
+            return null;
+        }
+        purgeExpired();
+
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(token, user, System.currentTimeMillis());
+        sessions.put(token, session);
+        return session;
+    }
+
+    /**
+     * Session for a token, extending its expiry, or null if it is unknown or expired
+     */
+    public Session resolve(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastUsed > IDLE_MILLIS) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastUsed = now;
+        return session;
+    }
+
+    public void logout(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    public int getActiveCount() {
+        purgeExpired();
+        return sessions.size();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> now - session.lastUsed > IDLE_MILLIS);
+    }
+}
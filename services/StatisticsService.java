@@ -0,0 +1,658 @@
+package services;
+
+import models.*;
+import data.*;
+import analytics.AmountDistributions;
+import analytics.BackerSketches;
+import analytics.Leaderboard;
+import analytics.PledgeRollups;
+import analytics.PledgeTotals;
+import analytics.TopK;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Statistics Service - statistical analysis and reporting without UI
+ * Thread-safe; the aggregates are shared by all sessions
+ */
+public class StatisticsService {
+    // Number of leaders kept by the live leaderboards
+    public static final int LEADERBOARD_SIZE = 100;
+    // Layout of the aggregates in the snapshot image; a different one is rebuilt from the pledges
+    private static final int IMAGE_VERSION = 2;
+
+    // Every query pins one snapshot so projects, users and pledges agree
+    private SnapshotStore snapshots;
+    // Maintained project status counts
+    private DeadlineClock deadlineClock;
+
+    // Aggregates maintained as pledges arrive, filled once by a backfill
+    private final PledgeRollups rollups = new PledgeRollups();
+    private final BackerSketches backers = new BackerSketches();
+    private final AmountDistributions amounts = new AmountDistributions();
+    private final Leaderboard projectTotals = new Leaderboard(LEADERBOARD_SIZE);
+    private final Leaderboard backerTotals = new Leaderboard(LEADERBOARD_SIZE);
+    private final Map<String, String> projectCategories = new HashMap<>();
+    private boolean aggregatesLoaded;
+    // Successful pledges in the aggregates, to check they match the image they are saved with
+    private long aggregatedPledges;
+    // Parallel reduction of one snapshot's pledges
+    private PledgeTotals pledgeTotals;
+    private long pledgeTotalsVersion;
+
+    public StatisticsService(DeadlineClock deadlineClock) {
+        this.snapshots = SnapshotStore.getInstance();
+        this.deadlineClock = deadlineClock;
+        SnapshotFile.setAggregates(new SnapshotFile.Aggregates() {
+            @Override
+            public long write(DataOutputStream out) throws IOException {
+                return writeAggregates(out);
+            }
+
+            @Override
+            public void restore(DataInputStream in, List<Pledge> replayed) throws IOException {
+                restoreAggregates(in, replayed);
+            }
+        });
+    }
+
+    /**
+     * Add all pledges of the current snapshot to the incremental aggregates once
+     */
+    private synchronized void ensureAggregates() throws IOException {
+        if (aggregatesLoaded) {
+            return;
+        }
+        try {
+            DataSnapshot snapshot = snapshots.current();
+            for (Project project : snapshot.getProjects()) {
+                projectCategories.put(project.getProjectId(), project.getCategoryId());
+            }
+            snapshot.getPledges().forEach(this::addToAggregates);
+            aggregatesLoaded = true;
+        } catch (IOException e) {
+            resetAggregates();
+            throw e;
+        }
+    }
+
+    /**
+     * Save the aggregates with the snapshot image; returns the successful pledges they cover, or -1
+     */
+    private synchronized long writeAggregates(DataOutputStream out) throws IOException {
+        if (!aggregatesLoaded) {
+            return -1;
+        }
+        out.writeInt(IMAGE_VERSION);
+        out.writeLong(aggregatedPledges);
+        rollups.writeTo(out);
+        backers.writeTo(out);
+        amounts.writeTo(out);
+        projectTotals.writeTo(out);
+        backerTotals.writeTo(out);
+        return aggregatedPledges;
+    }
+
+    /**
+     * Take the aggregates saved with the snapshot image and add the pledges replayed after it,
+     * instead of a backfill over every pledge
+     */
+    private synchronized void restoreAggregates(DataInputStream in, List<Pledge> replayed) throws IOException {
+        resetAggregates();
+        try {
+            if (in.readInt() != IMAGE_VERSION) {
+                throw new IOException("Unsupported aggregate layout");
+            }
+            aggregatedPledges = in.readLong();
+            rollups.readFrom(in);
+            backers.readFrom(in);
+            amounts.readFrom(in);
+            projectTotals.readFrom(in);
+            backerTotals.readFrom(in);
+            for (Project project : snapshots.current().getProjects()) {
+                projectCategories.put(project.getProjectId(), project.getCategoryId());
+            }
+            replayed.forEach(this::addToAggregates);
+            aggregatesLoaded = true;
+        } catch (IOException e) {
+            resetAggregates();
+            throw e;
+        }
+    }
+
+    private void addToAggregates(Pledge pledge) {
+        if (pledge.isSuccessful()) {
+            aggregatedPledges++;
+        }
+        String categoryId = projectCategories.get(pledge.getProjectId());
+        rollups.add(pledge, categoryId);
+        backers.add(pledge, categoryId);
+        amounts.add(pledge);
+        if (pledge.isSuccessful()) {
+            projectTotals.add(pledge.getProjectId(), pledge.getAmount());
+            backerTotals.add(pledge.getUserId(), pledge.getAmount());
+        }
+    }
+
+    /**
+     * Reduce a snapshot's pledges in parallel, reusing the result while the version is unchanged
+     */
+    private synchronized PledgeTotals getPledgeTotals(DataSnapshot snapshot) {
+        if (pledgeTotals == null || pledgeTotalsVersion != snapshot.getVersion()) {
+            pledgeTotals = PledgeTotals.aggregate(snapshot.getPledges());
+            pledgeTotalsVersion = snapshot.getVersion();
+        }
+        return pledgeTotals;
+    }
+
+    private void resetAggregates() {
+        rollups.clear();
+        backers.clear();
+        amounts.clear();
+        projectTotals.clear();
+        backerTotals.clear();
+        aggregatedPledges = 0;
+        aggregatesLoaded = false;
+    }
+
+    /**
+     * Add a pledge accepted by this application to the aggregates
+     */
+    public synchronized void recordPledge(Pledge pledge) {
+        // Before the backfill has run the pledge is picked up from storage
+        if (aggregatesLoaded) {
+            addToAggregates(pledge);
+        }
+    }
+
+    /**
+     * Add pledges appended to storage by another process
+     */
+    public synchronized void pledgesAppended(List<Pledge> pledges) {
+        if (aggregatesLoaded) {
+            pledges.forEach(this::addToAggregates);
+        }
+    }
+
+    /**
+     * Pledge storage was replaced, rebuild the aggregates on next use
+     */
+    public synchronized void pledgesReloaded() {
+        resetAggregates();
+    }
+
+    /**
+     * Keep the project to category mapping current
+     */
+    public synchronized void projectsReloaded(List<Project> projects) {
+        for (Project project : projects) {
+            projectCategories.put(project.getProjectId(), project.getCategoryId());
+        }
+    }
+
+    /**
+     * Get pledge volume over time for one project, or all projects for PledgeRollups.ALL
+     */
+    public List<PledgeRollups.Bucket> getProjectTrend(String projectId, PledgeRollups.Granularity granularity)
+            throws IOException {
+        ensureAggregates();
+        return rollups.getProjectSeries(projectId, granularity);
+    }
+
+    /**
+     * Get pledge volume over time for one category
+     */
+    public List<PledgeRollups.Bucket> getCategoryTrend(String categoryId, PledgeRollups.Granularity granularity)
+            throws IOException {
+        ensureAggregates();
+        return rollups.getCategorySeries(categoryId, granularity);
+    }
+
+    /**
+     * Get the approximate number of distinct backers of a project
+     */
+    public int getUniqueBackers(String projectId) throws IOException {
+        ensureAggregates();
+        return (int) backers.estimateProject(projectId);
+    }
+
+    /**
+     * Get the approximate number of distinct backers across several projects
+     */
+    public int getUniqueBackers(Collection<String> projectIds) throws IOException {
+        ensureAggregates();
+        return (int) backers.estimateProjects(projectIds);
+    }
+
+    /**
+     * Get the approximate number of distinct backers of a category
+     */
+    public int getUniqueBackersByCategory(String categoryId) throws IOException {
+        ensureAggregates();
+        return (int) backers.estimateCategory(categoryId);
+    }
+
+    /**
+     * Get the approximate number of distinct backers across several categories
+     */
+    public int getUniqueBackersByCategories(Collection<String> categoryIds) throws IOException {
+        ensureAggregates();
+        return (int) backers.estimateCategories(categoryIds);
+    }
+
+    /**
+     * Get the approximate number of distinct backers of any project
+     */
+    public int getUniqueBackersOverall() throws IOException {
+        ensureAggregates();
+        return (int) backers.estimateOverall();
+    }
+
+    /**
+     * Get p50/p90/p99 pledge amounts for a project
+     */
+    public AmountPercentiles getProjectAmountPercentiles(String projectId) throws IOException {
+        ensureAggregates();
+        return new AmountPercentiles(amounts.projectQuantile(projectId, 0.5),
+                amounts.projectQuantile(projectId, 0.9), amounts.projectQuantile(projectId, 0.99));
+    }
+
+    /**
+     * Get p50/p90/p99 pledge amounts for a reward tier
+     */
+    public AmountPercentiles getTierAmountPercentiles(String tierId) throws IOException {
+        ensureAggregates();
+        return new AmountPercentiles(amounts.tierQuantile(tierId, 0.5),
+                amounts.tierQuantile(tierId, 0.9), amounts.tierQuantile(tierId, 0.99));
+    }
+
+    /**
+     * Get p50/p90/p99 pledge amounts over all successful pledges
+     */
+    public AmountPercentiles getOverallAmountPercentiles() throws IOException {
+        ensureAggregates();
+        return new AmountPercentiles(amounts.overallQuantile(0.5),
+                amounts.overallQuantile(0.9), amounts.overallQuantile(0.99));
+    }
+
+    /**
+     * Get the pledge amount at any quantile (0 to 1) for a project
+     */
+    public double getProjectAmountQuantile(String projectId, double quantile) throws IOException {
+        ensureAggregates();
+        return amounts.projectQuantile(projectId, quantile);
+    }
+
+    /**
+     * Get overall system statistics
+     */
+    public SystemStatistics getSystemStatistics() throws IOException {
+        DataSnapshot snapshot = snapshots.current();
+        PledgeTotals totals = getPledgeTotals(snapshot);
+        return new SystemStatistics(totals.getOverall(), snapshot.getProjects().size(),
+                deadlineClock.getOpenCount(), deadlineClock.getCount(DeadlineClock.SUCCESS),
+                deadlineClock.getCount(DeadlineClock.FAILED), snapshot.getUsers().size());
+    }
+
+    /**
+     * Get project performance statistics, sorted by funding percentage
+     */
+    public List<ProjectPerformance> getProjectPerformanceStats() throws IOException {
+        return getProjectPerformanceStats(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get performance of the best funded projects by percentage of goal
+     */
+    public List<ProjectPerformance> getProjectPerformanceStats(int limit) throws IOException {
+        DataSnapshot snapshot = snapshots.current();
+        PledgeTotals totals = getPledgeTotals(snapshot);
+        List<Project> leaders = TopK.select(snapshot.getProjects(), limit,
+                Comparator.comparingDouble(project -> fundingPercentage(project, totals)));
+        List<ProjectPerformance> performance = new ArrayList<>();
+
+        for (Project project : leaders) {
+            performance.add(new ProjectPerformance(project, totals.getProject(project.getProjectId()),
+                    getUniqueBackers(project.getProjectId()),
+                    getProjectAmountPercentiles(project.getProjectId())));
+        }
+
+        return performance;
+    }
+
+    private static double fundingPercentage(Project project, PledgeTotals totals) {
+        return project.getGoalAmount() > 0
+                ? totals.getProject(project.getProjectId()).getAmount() / project.getGoalAmount() * 100
+                : 0;
+    }
+
+    /**
+     * Get user activity statistics, sorted by total pledged
+     */
+    public List<UserActivity> getUserActivityStats() throws IOException {
+        return getUserActivityStats(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get activity of the users who pledged the most
+     */
+    public List<UserActivity> getUserActivityStats(int limit) throws IOException {
+        DataSnapshot snapshot = snapshots.current();
+        PledgeTotals totals = getPledgeTotals(snapshot);
+        List<User> leaders = TopK.select(snapshot.getUsers(), limit,
+                Comparator.comparingDouble(user -> totals.getUser(user.getUserId()).getAmount()));
+        List<UserActivity> activity = new ArrayList<>();
+
+        for (User user : leaders) {
+            activity.add(new UserActivity(user, totals.getUser(user.getUserId()),
+                    totals.getProjectsSupported(user.getUserId())));
+        }
+
+        return activity;
+    }
+
+    /**
+     * Get the projects that raised the most, from the live leaderboard
+     *
+     * @param k number of projects, at most LEADERBOARD_SIZE
+     */
+    public List<LeaderboardRow> getTopFundedProjects(int k) throws IOException {
+        ensureAggregates();
+        Map<String, String> names = new HashMap<>();
+        for (Project project : snapshots.current().getProjects()) {
+            names.put(project.getProjectId(), project.getName());
+        }
+        return toRows(projectTotals.top(k), names);
+    }
+
+    /**
+     * Get the users who pledged the most, from the live leaderboard
+     *
+     * @param k number of users, at most LEADERBOARD_SIZE
+     */
+    public List<LeaderboardRow> getTopBackers(int k) throws IOException {
+        ensureAggregates();
+        Map<String, String> names = new HashMap<>();
+        for (User user : snapshots.current().getUsers()) {
+            names.put(user.getUserId(), user.getUsername());
+        }
+        return toRows(backerTotals.top(k), names);
+    }
+
+    /**
+     * Get the projects that raised the most within a recent window
+     */
+    public List<LeaderboardRow> getFastestGrowingProjects(int k, Duration window) throws IOException {
+        ensureAggregates();
+        LocalDateTime since = LocalDateTime.now().minus(window);
+        List<LeaderboardRow> rows = new ArrayList<>();
+        for (Project project : snapshots.current().getProjects()) {
+            double raised = rollups.getProjectAmountSince(project.getProjectId(), since);
+            if (raised > 0) {
+                rows.add(new LeaderboardRow(project.getProjectId(), project.getName(), raised));
+            }
+        }
+        return TopK.select(rows, k, Comparator.comparingDouble(LeaderboardRow::getValue));
+    }
+
+    private static List<LeaderboardRow> toRows(List<Leaderboard.Entry> entries, Map<String, String> names) {
+        List<LeaderboardRow> rows = new ArrayList<>();
+        for (Leaderboard.Entry entry : entries) {
+            rows.add(new LeaderboardRow(entry.getKey(), names.getOrDefault(entry.getKey(), entry.getKey()),
+                    entry.getScore()));
+        }
+        return rows;
+    }
+
+    /**
+     * System-wide statistics
+     */
+    public static class SystemStatistics {
+        private int totalProjects;
+        private int totalUsers;
+        private int totalPledges;
+        private int successfulPledges;
+        private int rejectedPledges;
+        private double totalAmountRaised;
+        private double averagePledgeAmount;
+        private int activeProjects;
+        private int completedProjects;
+        private int successfulProjects; // Projects that reached their goal
+        private int failedProjects; // Projects that failed
+
+        public SystemStatistics(PledgeTotals.Totals pledges, int totalProjects, int activeProjects,
+                int successfulProjects, int failedProjects, int totalUsers) {
+            this.totalProjects = totalProjects;
+            this.totalUsers = totalUsers;
+            this.totalPledges = pledges.getPledges();
+            this.successfulPledges = pledges.getSuccessful();
+            this.rejectedPledges = pledges.getRejected();
+            this.totalAmountRaised = pledges.getAmount();
+            this.averagePledgeAmount = successfulPledges > 0 ? totalAmountRaised / successfulPledges : 0;
+            this.activeProjects = activeProjects;
+            this.completedProjects = totalProjects - activeProjects;
+            this.successfulProjects = successfulProjects;
+            this.failedProjects = failedProjects;
+        }
+
+        // Getters
+        public int getTotalProjects() {
+            return totalProjects;
+        }
+
+        public int getTotalUsers() {
+            return totalUsers;
+        }
+
+        public int getTotalPledges() {
+            return totalPledges;
+        }
+
+        public int getSuccessfulPledges() {
+            return successfulPledges;
+        }
+
+        public int getRejectedPledges() {
+            return rejectedPledges;
+        }
+
+        public double getTotalAmountRaised() {
+            return totalAmountRaised;
+        }
+
+        public double getAveragePledgeAmount() {
+            return averagePledgeAmount;
+        }
+
+        public int getActiveProjects() {
+            return activeProjects;
+        }
+
+        public int getCompletedProjects() {
+            return completedProjects;
+        }
+
+        public double getSuccessRate() {
+            return totalPledges > 0 ? (double) successfulPledges / totalPledges * 100 : 0;
+        }
+
+        public int getSuccessfulProjects() {
+            return successfulProjects;
+        }
+
+        public int getFailedProjects() {
+            return failedProjects;
+        }
+
+        public double getProjectSuccessRate() {
+            return totalProjects > 0 ? (double) successfulProjects / totalProjects * 100 : 0;
+        }
+    }
+
+    /**
+     * Individual project performance
+     */
+    public static class ProjectPerformance {
+        private Project project;
+        private int totalPledges;
+        private int successfulPledges;
+        private int rejectedPledges;
+        private double totalRaised;
+        private int uniqueBackers;
+        private AmountPercentiles amountPercentiles;
+
+        public ProjectPerformance(Project project, PledgeTotals.Totals pledges, int uniqueBackers,
+                AmountPercentiles amountPercentiles) {
+            this.project = project;
+            this.totalPledges = pledges.getPledges();
+            this.successfulPledges = pledges.getSuccessful();
+            this.rejectedPledges = pledges.getRejected();
+            this.totalRaised = pledges.getAmount();
+            this.uniqueBackers = uniqueBackers;
+            this.amountPercentiles = amountPercentiles;
+        }
+
+        public double getFundingPercentage() {
+            return project.getGoalAmount() > 0 ? (totalRaised / project.getGoalAmount()) * 100 : 0;
+        }
+
+        // Getters
+        public Project getProject() {
+            return project;
+        }
+
+        public int getTotalPledges() {
+            return totalPledges;
+        }
+
+        public int getSuccessfulPledges() {
+            return successfulPledges;
+        }
+
+        public int getRejectedPledges() {
+            return rejectedPledges;
+        }
+
+        public double getTotalRaised() {
+            return totalRaised;
+        }
+
+        public int getUniqueBackers() {
+            return uniqueBackers;
+        }
+
+        public AmountPercentiles getAmountPercentiles() {
+            return amountPercentiles;
+        }
+    }
+
+    /**
+     * Pledge amount percentiles; values are NaN when there are no pledges
+     */
+    public static class AmountPercentiles {
+        private double p50;
+        private double p90;
+        private double p99;
+
+        public AmountPercentiles(double p50, double p90, double p99) {
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+        }
+
+        public boolean isEmpty() {
+            return Double.isNaN(p50);
+        }
+
+        // Getters
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+    }
+
+    /**
+     * One ranked project or user
+     */
+    public static class LeaderboardRow {
+        private String id;
+        private String name;
+        private double value;
+
+        public LeaderboardRow(String id, String name, double value) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+        }
+
+        // Getters
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Individual user activity
+     */
+    public static class UserActivity {
+        private User user;
+        private int totalPledges;
+        private int successfulPledges;
+        private int rejectedPledges;
+        private double totalPledged;
+        private int projectsSupported;
+
+        public UserActivity(User user, PledgeTotals.Totals pledges, int projectsSupported) {
+            this.user = user;
+            this.totalPledges = pledges.getPledges();
+            this.successfulPledges = pledges.getSuccessful();
+            this.rejectedPledges = pledges.getRejected();
+            this.totalPledged = pledges.getAmount();
+            this.projectsSupported = projectsSupported;
+        }
+
+        // Getters
+        public User getUser() {
+            return user;
+        }
+
+        public int getTotalPledges() {
+            return totalPledges;
+        }
+
+        public int getSuccessfulPledges() {
+            return successfulPledges;
+        }
+
+        public int getRejectedPledges() {
+            return rejectedPledges;
+        }
+
+        public double getTotalPledged() {
+            return totalPledged;
+        }
+
+        public int getProjectsSupported() {
+            return projectsSupported;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,41 @@
+package services;
+
+import models.User;
+
+/**
+ * The user a service call acts for
+ *
+ * Passed explicitly to services instead of read from shared application
+ * state, so calls for different sessions can run at the same time.
+ */
+public final class UserContext {
+    private final User user;
+    private final String sessionToken;
+
+    public UserContext(User user, String sessionToken) {
+        if (user == null) {
+            throw new IllegalArgumentException("User context requires a user");
+        }
+        this.user = user;
+        this.sessionToken = sessionToken;
+    }
+
+    /**
+     * Context for an open session
+     */
+    public static UserContext of(SessionManager.Session session) {
+        return new UserContext(session.getUser(), session.getToken());
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getUserId() {
+        return user.getUserId();
+    }
+
+    public String getSessionToken() {
+        return sessionToken;
+    }
+}
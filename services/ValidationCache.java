@@ -0,0 +1,130 @@
+package services;
+
+import models.*;
+import data.InventoryService;
+import data.RewardTierDAO;
+import data.SnapshotStore;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the rules that most often reject a pledge
+ *
+ * Holds each project's deadline and each tier's minimum amount and remaining
+ * quantity, so a pledge to an ended project or a sold-out tier is rejected
+ * without reading storage. Deadlines are compared with the deadline clock's
+ * cached day; remaining quantities follow commits through
+ * TierQuantityChanged events. A pledge the cache lets through is still
+ * validated against storage by PledgeService, and so is a pledge for a
+ * project or tier the cache does not know yet.
+ */
+public class ValidationCache {
+    /**
+     * What validation needs to know about one tier
+     */
+    private static class TierRule {
+        private final String name;
+        private final double minimumAmount;
+        private volatile int remaining;
+
+        TierRule(RewardTier tier, int remaining) {
+            this.name = tier.getName();
+            this.minimumAmount = tier.getMinimumAmount();
+            this.remaining = remaining;
+        }
+    }
+
+    private final DeadlineClock deadlineClock;
+    private final Map<String, LocalDate> deadlines = new ConcurrentHashMap<>();
+    private final Map<String, TierRule> tiers = new ConcurrentHashMap<>();
+
+    public ValidationCache(DeadlineClock deadlineClock) {
+        this.deadlineClock = deadlineClock;
+    }
+
+    /**
+     * Fill the cache from the current projects and the tiers with their unflushed sales
+     */
+    public void load() throws IOException {
+        projectsReloaded(SnapshotStore.getInstance().current().getProjects());
+        tiersReloaded(new RewardTierDAO().loadRewardTiers());
+    }
+
+    /**
+     * Reason a pledge is certain to be rejected, or null if it has to be checked against storage
+     * Reasons and their order match PledgeService's validation
+     */
+    public String rejectionReason(String projectId, double amount, String tierId) {
+        // Unknown IDs may be new since the last reload, storage decides
+        LocalDate deadline = projectId != null ? deadlines.get(projectId) : null;
+        if (deadline == null) {
+            return null;
+        }
+        if (deadlineClock.today().isAfter(deadline)) {
+            return "Project deadline has passed";
+        }
+        if (amount <= 0) {
+            return "Pledge amount must be greater than 0";
+        }
+        if (tierId == null || tierId.isEmpty()) {
+            return null;
+        }
+        TierRule tier = tiers.get(tierId);
+        if (tier == null) {
+            return null;
+        }
+        if (amount < tier.minimumAmount) {
+            return String.format("Minimum amount for '%s' is $%.2f", tier.name, tier.minimumAmount);
+        }
+        if (tier.remaining <= 0) {
+            return String.format("Reward tier '%s' is no longer available", tier.name);
+        }
+        return null;
+    }
+
+    /**
+     * Replace the cached projects, e.g. after the projects table was reloaded
+     */
+    public synchronized void projectsReloaded(List<Project> projects) {
+        Set<String> present = new HashSet<>();
+        for (Project project : projects) {
+            deadlines.put(project.getProjectId(), project.getDeadline());
+            present.add(project.getProjectId());
+        }
+        deadlines.keySet().retainAll(present);
+    }
+
+    public void projectUpdated(Project project) {
+        deadlines.put(project.getProjectId(), project.getDeadline());
+    }
+
+    /**
+     * Replace the cached tiers; quantities are taken from the inventory, which includes unflushed sales
+     */
+    public synchronized void tiersReloaded(List<RewardTier> loaded) throws IOException {
+        InventoryService inventory = InventoryService.getInstance();
+        Set<String> present = new HashSet<>();
+        for (RewardTier tier : loaded) {
+            tiers.put(tier.getTierId(), new TierRule(tier, inventory.getRemaining(tier.getTierId())));
+            present.add(tier.getTierId());
+        }
+        tiers.keySet().retainAll(present);
+    }
+
+    /**
+     * Follow a committed sale
+     * Events from concurrent commits can arrive out of order, so the count is re-read from the inventory
+     */
+    public void tierQuantityChanged(String tierId) {
+        TierRule tier = tiers.get(tierId);
+        if (tier != null) {
+            try {
+                tier.remaining = InventoryService.getInstance().getRemaining(tierId);
+            } catch (IOException e) {
+                // Keep the old count; the pledge path still checks the inventory
+            }
+        }
+    }
+}
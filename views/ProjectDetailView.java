@@ -3,11 +3,14 @@ package views;
 import controllers.MainController;
 import controllers.ProjectController;
 import controllers.PledgeController;
+import services.EventBus;
+import services.PledgeService;
 import models.*;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -49,6 +52,18 @@ public class ProjectDetailView extends JFrame {
         initializeComponents();
         setupLayout();
         setupEventHandlers();
+        subscribeToEvents();
+    }
+
+    /**
+     * Apply pledge results as deltas instead of reloading the project
+     */
+    private void subscribeToEvents() {
+        EventBus eventBus = mainController.getEventBus();
+        eventBus.subscribe(EventBus.ProjectUpdated.class,
+                e -> SwingUtilities.invokeLater(() -> projectUpdated(e.getProject())));
+        eventBus.subscribe(EventBus.TierQuantityChanged.class,
+                e -> SwingUtilities.invokeLater(() -> tierQuantityChanged(e.getTierId(), e.getRemainingQuantity())));
     }
 
     private void initializeComponents() {
@@ -178,6 +193,62 @@ public class ProjectDetailView extends JFrame {
         updateRewardTiers();
     }
 
+    /**
+     * Pick up an externally reloaded project table
+     */
+    public void projectsReloaded(List<Project> projects) {
+        if (currentProject == null)
+            return;
+
+        for (Project project : projects) {
+            if (project.getProjectId().equals(currentProject.getProjectId())) {
+                currentProject = project;
+                updateProjectDisplay();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pick up an externally reloaded reward tier table
+     */
+    public void rewardTiersReloaded(List<RewardTier> tiers) {
+        if (currentProject == null)
+            return;
+
+        rewardTiers = new ArrayList<>();
+        for (RewardTier tier : tiers) {
+            if (tier.getProjectId().equals(currentProject.getProjectId())) {
+                rewardTiers.add(tier);
+            }
+        }
+        updateRewardTiers();
+    }
+
+    /**
+     * Show the new amount of the displayed project
+     */
+    private void projectUpdated(Project project) {
+        if (currentProject != null && currentProject.getProjectId().equals(project.getProjectId())) {
+            currentProject = project;
+            updateFundingDisplay();
+        }
+    }
+
+    /**
+     * Show the new remaining quantity of one displayed tier
+     */
+    private void tierQuantityChanged(String tierId, int remainingQuantity) {
+        for (int i = 0; i < rewardTierModel.size(); i++) {
+            RewardTier tier = rewardTierModel.get(i);
+            if (tier.getTierId().equals(tierId)) {
+                tier.setRemainingQuantity(remainingQuantity);
+                rewardTierModel.set(i, tier); // Repaints just this cell
+                return;
+            }
+        }
+    }
+
     private void updateProjectDisplay() {
         if (currentProject == null)
             return;
@@ -192,6 +263,13 @@ public class ProjectDetailView extends JFrame {
 
         descriptionArea.setText(currentProject.getDescription());
 
+        updateFundingDisplay();
+    }
+
+    /**
+     * Amount, progress and status, the parts a pledge changes
+     */
+    private void updateFundingDisplay() {
         goalLabel.setText(String.format("Goal: $%.2f", currentProject.getGoalAmount()));
         currentLabel.setText(String.format("Raised: $%.2f", currentProject.getCurrentAmount()));
 
@@ -260,15 +338,13 @@ public class ProjectDetailView extends JFrame {
             String tierId = selectedTier != null ? selectedTier.getTierId() : null;
 
             // Process pledge
-            PledgeController.PledgeResult result = pledgeController.processPledge(
+            PledgeService.PledgeResult result = pledgeController.processPledge(
                     currentProject.getProjectId(), amount, tierId);
 
             if (result.isSuccess()) {
                 mainController.showSuccess(result.getMessage());
                 pledgeAmountField.setText("");
-
-                // Refresh project data
-                loadProject(currentProject.getProjectId());
+                // The ProjectUpdated and TierQuantityChanged events update the display
             } else {
                 mainController.showError(result.getMessage());
             }
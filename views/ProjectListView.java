@@ -2,13 +2,18 @@ package views;
 
 import controllers.MainController;
 import controllers.ProjectController;
+import services.EventBus;
+import data.Page;
 import models.*;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Project List View - Shows all projects with search, filter, and sort
@@ -27,10 +32,16 @@ public class ProjectListView extends JFrame {
     private JButton refreshButton;
     private JButton statisticsButton;
     private JButton logoutButton;
+    private JButton previousPageButton;
+    private JButton nextPageButton;
+    private JLabel pageLabel;
 
     // Data
-    private List<Project> currentProjects;
+    private static final int PAGE_SIZE = 50;
+    private int pageOffset;
+    private boolean loadingCategories; // Suppresses reloads while the category list is rebuilt
     private List<Category> categories;
+    private Map<String, String> categoryNames = new HashMap<>();
 
     public ProjectListView(MainController mainController) {
         this.mainController = mainController;
@@ -39,6 +50,8 @@ public class ProjectListView extends JFrame {
         setupLayout();
         setupEventHandlers();
         loadCategories();
+        mainController.getEventBus().subscribe(EventBus.ProjectUpdated.class,
+                e -> SwingUtilities.invokeLater(() -> projectUpdated(e.getProject())));
     }
 
     private void initializeComponents() {
@@ -70,6 +83,9 @@ public class ProjectListView extends JFrame {
         refreshButton = new JButton("Refresh");
         statisticsButton = new JButton("Statistics");
         logoutButton = new JButton("Logout");
+        previousPageButton = new JButton("< Previous");
+        nextPageButton = new JButton("Next >");
+        pageLabel = new JLabel();
     }
 
     private void setupLayout() {
@@ -100,9 +116,14 @@ public class ProjectListView extends JFrame {
         JScrollPane scrollPane = new JScrollPane(projectTable);
         scrollPane.setPreferredSize(new Dimension(950, 400));
 
-        // Bottom panel with instructions
-        JPanel bottomPanel = new JPanel();
-        bottomPanel.add(new JLabel("Double-click a project to view details"));
+        // Bottom panel with paging and instructions
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        JPanel pagingPanel = new JPanel();
+        pagingPanel.add(previousPageButton);
+        pagingPanel.add(pageLabel);
+        pagingPanel.add(nextPageButton);
+        bottomPanel.add(pagingPanel, BorderLayout.CENTER);
+        bottomPanel.add(new JLabel("Double-click a project to view details"), BorderLayout.EAST);
 
         add(headerPanel, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
@@ -122,6 +143,16 @@ public class ProjectListView extends JFrame {
         // Refresh button
         refreshButton.addActionListener(e -> refreshProjects());
 
+        // Paging buttons
+        previousPageButton.addActionListener(e -> {
+            pageOffset = Math.max(0, pageOffset - PAGE_SIZE);
+            refreshProjects();
+        });
+        nextPageButton.addActionListener(e -> {
+            pageOffset += PAGE_SIZE;
+            refreshProjects();
+        });
+
         // Statistics button
         statisticsButton.addActionListener(e -> mainController.showStatisticsView());
 
@@ -144,58 +175,87 @@ public class ProjectListView extends JFrame {
     }
 
     private void loadCategories() {
-        categories = projectController.getAllCategories();
+        categoriesReloaded(projectController.getAllCategories());
+    }
+
+    /**
+     * Replace the category list, keeping the current selection if it still exists
+     */
+    public void categoriesReloaded(List<Category> reloaded) {
+        Category selected = (Category) categoryComboBox.getSelectedItem();
+        categories = reloaded;
+        categoryNames = new HashMap<>();
+        for (Category category : categories) {
+            categoryNames.put(category.getCategoryId(), category.getName());
+        }
+
+        loadingCategories = true;
         categoryComboBox.removeAllItems();
         categoryComboBox.addItem(new Category("", "All Categories", ""));
         for (Category category : categories) {
             categoryComboBox.addItem(category);
+            if (selected != null && category.getCategoryId().equals(selected.getCategoryId())) {
+                categoryComboBox.setSelectedItem(category);
+            }
         }
+        loadingCategories = false;
     }
 
+    /**
+     * Fetch the current page again with the current filters and sort order
+     */
     public void refreshProjects() {
-        currentProjects = projectController.getAllProjects();
-        filterAndSortProjects();
-    }
+        String searchTerm = searchField.getText();
+        Category selectedCategory = (Category) categoryComboBox.getSelectedItem();
+        String categoryId = selectedCategory != null ? selectedCategory.getCategoryId() : "";
+        String sortBy = (String) sortComboBox.getSelectedItem();
 
-    private void filterAndSortProjects() {
-        if (currentProjects == null) {
+        Page<Project> page = projectController.getProjectPage(categoryId, searchTerm, sortBy, pageOffset, PAGE_SIZE);
+        if (page.getItems().isEmpty() && page.hasPrevious()) {
+            // The page emptied, e.g. after a reload; step back to the last page
+            pageOffset = Math.max(0, pageOffset - PAGE_SIZE);
             refreshProjects();
             return;
         }
 
-        // Apply search filter
-        String searchTerm = searchField.getText().trim();
-        List<Project> filteredProjects = projectController.searchProjects(searchTerm);
+        updateTable(page.getItems());
+        previousPageButton.setEnabled(page.hasPrevious());
+        nextPageButton.setEnabled(page.hasMore());
+        pageLabel.setText(page.getItems().isEmpty() ? "No projects"
+                : String.format("Projects %d-%d", page.getOffset() + 1, page.getNextOffset()));
+    }
 
-        // Apply category filter
-        Category selectedCategory = (Category) categoryComboBox.getSelectedItem();
-        if (selectedCategory != null && !selectedCategory.getCategoryId().isEmpty()) {
-            filteredProjects = projectController.getProjectsByCategory(selectedCategory.getCategoryId());
-            if (!searchTerm.isEmpty()) {
-                // Apply search to category-filtered results
-                filteredProjects = filteredProjects.stream()
-                        .filter(p -> p.getName().toLowerCase().contains(searchTerm.toLowerCase()) ||
-                                p.getDescription().toLowerCase().contains(searchTerm.toLowerCase()))
-                        .collect(java.util.ArrayList::new, java.util.ArrayList::add, java.util.ArrayList::addAll);
-            }
-        }
+    /**
+     * Filters or sort order changed, start again from the first page
+     */
+    private void filterAndSortProjects() {
+        if (loadingCategories)
+            return;
+        pageOffset = 0;
+        refreshProjects();
+    }
 
-        // Apply sorting
-        String sortBy = (String) sortComboBox.getSelectedItem();
-        if (sortBy != null) {
-            filteredProjects = projectController.sortProjects(filteredProjects, sortBy);
+    /**
+     * Update only the table row of a changed project
+     */
+    public void projectUpdated(Project project) {
+        for (int row = 0; row < tableModel.getRowCount(); row++) {
+            if (project.getProjectId().equals(tableModel.getValueAt(row, 0))) {
+                tableModel.setValueAt(String.format("$%.2f", project.getCurrentAmount()), row, 4);
+                tableModel.setValueAt(String.format("%.1f%%", project.getFundingProgress()), row, 5);
+                tableModel.setValueAt(project.getStatusDescription(), row, 7);
+                return;
+            }
         }
-
-        // Update table
-        updateTable(filteredProjects);
     }
 
     private void updateTable(List<Project> projects) {
         tableModel.setRowCount(0);
+        // One day for every row, so a render across midnight stays consistent
+        LocalDate today = Project.today();
 
         for (Project project : projects) {
-            Category category = projectController.getCategory(project.getCategoryId());
-            String categoryName = category != null ? category.getName() : "Unknown";
+            String categoryName = categoryNames.getOrDefault(project.getCategoryId(), "Unknown");
 
             Object[] row = {
                     project.getProjectId(),
@@ -204,8 +264,8 @@ public class ProjectListView extends JFrame {
                     String.format("$%.2f", project.getGoalAmount()),
                     String.format("$%.2f", project.getCurrentAmount()),
                     String.format("%.1f%%", project.getFundingProgress()),
-                    project.isActive() ? String.valueOf(project.getDaysRemaining()) : "Ended",
-                    project.getStatusDescription() // Display detailed status
+                    project.isActive(today) ? String.valueOf(project.getDaysRemaining(today)) : "Ended",
+                    project.getStatusDescription(today) // Display detailed status
             };
             tableModel.addRow(row);
         }
@@ -2,12 +2,21 @@ package views;
 
 import controllers.MainController;
 import controllers.StatisticsController;
-import controllers.StatisticsController.SystemStatistics;
-import controllers.StatisticsController.ProjectPerformance;
-import controllers.StatisticsController.UserActivity;
+import services.StatisticsService.SystemStatistics;
+import services.StatisticsService.ProjectPerformance;
+import services.StatisticsService.UserActivity;
+import services.StatisticsService.AmountPercentiles;
+import services.StatisticsService.LeaderboardRow;
+import analytics.PledgeRollups;
+import models.Category;
+import models.Project;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.awt.event.ActionListener;
+import java.time.Duration;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -29,6 +38,7 @@ public class StatisticsView extends JFrame {
     private JLabel successfulProjectsLabel; // Successful projects
     private JLabel failedProjectsLabel; // Failed projects
     private JLabel projectSuccessRateLabel; // Project success rate
+    private JLabel pledgePercentilesLabel; // p50 / p90 / p99 pledge amount
 
     // Tables for detailed statistics
     private JTable projectPerformanceTable;
@@ -36,6 +46,20 @@ public class StatisticsView extends JFrame {
     private JTable userActivityTable;
     private DefaultTableModel userTableModel;
 
+    // Trend components
+    private JComboBox<TrendScope> trendScopeComboBox;
+    private JComboBox<PledgeRollups.Granularity> trendGranularityComboBox;
+    private JTable trendTable;
+    private DefaultTableModel trendTableModel;
+    private TrendChart trendChart;
+
+    // Leaderboard components
+    private static final int LEADERBOARD_ROWS = 10;
+    private DefaultTableModel topProjectsModel;
+    private DefaultTableModel topBackersModel;
+    private DefaultTableModel fastestGrowingModel;
+    private JComboBox<String> growthWindowComboBox;
+
     // Controls
     private JButton refreshButton;
     private JButton backButton;
@@ -66,11 +90,12 @@ public class StatisticsView extends JFrame {
         successfulProjectsLabel = new JLabel("0");
         failedProjectsLabel = new JLabel("0");
         projectSuccessRateLabel = new JLabel("0%");
+        pledgePercentilesLabel = new JLabel("-");
 
         // Project performance table
         String[] projectColumns = { "Project Name", "Goal", "Raised", "Progress %", "Status", "Pledges", "Success",
                 "Rejected",
-                "Backers" };
+                "Backers", "P50", "P90", "P99" };
         projectTableModel = new DefaultTableModel(projectColumns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -90,6 +115,27 @@ public class StatisticsView extends JFrame {
         };
         userActivityTable = new JTable(userTableModel);
 
+        // Trend components
+        trendScopeComboBox = new JComboBox<>();
+        trendGranularityComboBox = new JComboBox<>(PledgeRollups.Granularity.values());
+        trendGranularityComboBox.setSelectedItem(PledgeRollups.Granularity.DAILY);
+        String[] trendColumns = { "Period", "Pledges", "Amount", "Cumulative" };
+        trendTableModel = new DefaultTableModel(trendColumns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        trendTable = new JTable(trendTableModel);
+        trendChart = new TrendChart();
+
+        // Leaderboard tables
+        topProjectsModel = createLeaderboardModel("Project", "Raised");
+        topBackersModel = createLeaderboardModel("Backer", "Pledged");
+        fastestGrowingModel = createLeaderboardModel("Project", "Raised");
+        growthWindowComboBox = new JComboBox<>(new String[] { "Last 24 hours", "Last 7 days", "Last 30 days" });
+        growthWindowComboBox.setSelectedIndex(1);
+
         // Control buttons
         refreshButton = new JButton("Refresh");
         backButton = new JButton("Back to Projects");
@@ -149,7 +195,7 @@ public class StatisticsView extends JFrame {
         statsGrid.add(createStatCard("Successful Projects", successfulProjectsLabel));
         statsGrid.add(createStatCard("Failed Projects", failedProjectsLabel));
         statsGrid.add(createStatCard("Project Success Rate", projectSuccessRateLabel));
-        statsGrid.add(new JLabel()); // Empty cell
+        statsGrid.add(createStatCard("Pledge P50 / P90 / P99", pledgePercentilesLabel));
 
         panel.add(statsGrid, BorderLayout.CENTER);
         return panel;
@@ -187,6 +233,27 @@ public class StatisticsView extends JFrame {
         JScrollPane userScroll = new JScrollPane(userActivityTable);
         tabbedPane.addTab("User Activity", userScroll);
 
+        // Trends tab
+        JPanel trendPanel = new JPanel(new BorderLayout());
+        JPanel trendControls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        trendControls.add(new JLabel("Show:"));
+        trendControls.add(trendScopeComboBox);
+        trendControls.add(new JLabel("Interval:"));
+        trendControls.add(trendGranularityComboBox);
+        JSplitPane trendSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, trendChart,
+                new JScrollPane(trendTable));
+        trendSplit.setDividerLocation(550);
+        trendPanel.add(trendControls, BorderLayout.NORTH);
+        trendPanel.add(trendSplit, BorderLayout.CENTER);
+        tabbedPane.addTab("Trends", trendPanel);
+
+        // Leaderboards tab
+        JPanel leaderboardPanel = new JPanel(new GridLayout(1, 3, 10, 0));
+        leaderboardPanel.add(createLeaderboardPanel("Top Funded Projects", topProjectsModel, null));
+        leaderboardPanel.add(createLeaderboardPanel("Top Backers", topBackersModel, null));
+        leaderboardPanel.add(createLeaderboardPanel("Fastest Growing", fastestGrowingModel, growthWindowComboBox));
+        tabbedPane.addTab("Leaderboards", leaderboardPanel);
+
         panel.add(tabbedPane, BorderLayout.CENTER);
         return panel;
     }
@@ -194,6 +261,9 @@ public class StatisticsView extends JFrame {
     private void setupEventHandlers() {
         refreshButton.addActionListener(e -> refreshStatistics());
         backButton.addActionListener(e -> mainController.showProjectListView());
+        trendScopeComboBox.addActionListener(e -> updateTrend());
+        trendGranularityComboBox.addActionListener(e -> updateTrend());
+        growthWindowComboBox.addActionListener(e -> updateFastestGrowing());
     }
 
     public void refreshStatistics() {
@@ -203,6 +273,8 @@ public class StatisticsView extends JFrame {
         // Update detailed tables
         updateProjectPerformanceTable();
         updateUserActivityTable();
+        updateTrendScopes();
+        updateLeaderboards();
     }
 
     private void updateSystemOverview() {
@@ -222,6 +294,11 @@ public class StatisticsView extends JFrame {
         failedProjectsLabel.setText(String.valueOf(stats.getFailedProjects()));
         projectSuccessRateLabel.setText(String.format("%.1f%%", stats.getProjectSuccessRate()));
 
+        AmountPercentiles percentiles = statisticsController.getOverallAmountPercentiles();
+        pledgePercentilesLabel.setText(percentiles.isEmpty() ? "-"
+                : String.format("$%.0f / $%.0f / $%.0f", percentiles.getP50(), percentiles.getP90(),
+                        percentiles.getP99()));
+
         // Color code success rates
         if (stats.getSuccessRate() >= 80) {
             successRateLabel.setForeground(Color.GREEN);
@@ -250,6 +327,7 @@ public class StatisticsView extends JFrame {
 
         List<ProjectPerformance> performance = statisticsController.getProjectPerformanceStats();
         for (ProjectPerformance perf : performance) {
+            AmountPercentiles percentiles = perf.getAmountPercentiles();
             Object[] row = {
                     perf.getProject().getName(),
                     String.format("$%.2f", perf.getProject().getGoalAmount()),
@@ -259,12 +337,19 @@ public class StatisticsView extends JFrame {
                     perf.getTotalPledges(),
                     perf.getSuccessfulPledges(),
                     perf.getRejectedPledges(),
-                    perf.getUniqueBackers()
+                    perf.getUniqueBackers(),
+                    formatAmount(percentiles.getP50()),
+                    formatAmount(percentiles.getP90()),
+                    formatAmount(percentiles.getP99())
             };
             projectTableModel.addRow(row);
         }
     }
 
+    private String formatAmount(double amount) {
+        return Double.isNaN(amount) ? "-" : String.format("$%.2f", amount);
+    }
+
     private void updateUserActivityTable() {
         userTableModel.setRowCount(0);
 
@@ -281,4 +366,188 @@ public class StatisticsView extends JFrame {
             userTableModel.addRow(row);
         }
     }
-}
\ No newline at end of file
+
+    private DefaultTableModel createLeaderboardModel(String nameColumn, String valueColumn) {
+        return new DefaultTableModel(new String[] { "#", nameColumn, valueColumn }, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    private JPanel createLeaderboardPanel(String title, DefaultTableModel model, JComponent control) {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createTitledBorder(title));
+        if (control != null) {
+            panel.add(control, BorderLayout.NORTH);
+        }
+        JTable table = new JTable(model);
+        table.getColumnModel().getColumn(0).setMaxWidth(30);
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        return panel;
+    }
+
+    private void updateLeaderboards() {
+        fillLeaderboard(topProjectsModel, statisticsController.getTopFundedProjects(LEADERBOARD_ROWS));
+        fillLeaderboard(topBackersModel, statisticsController.getTopBackers(LEADERBOARD_ROWS));
+        updateFastestGrowing();
+    }
+
+    private void updateFastestGrowing() {
+        Duration[] windows = { Duration.ofHours(24), Duration.ofDays(7), Duration.ofDays(30) };
+        Duration window = windows[growthWindowComboBox.getSelectedIndex()];
+        fillLeaderboard(fastestGrowingModel, statisticsController.getFastestGrowingProjects(LEADERBOARD_ROWS, window));
+    }
+
+    private void fillLeaderboard(DefaultTableModel model, List<LeaderboardRow> rows) {
+        model.setRowCount(0);
+        int rank = 1;
+        for (LeaderboardRow row : rows) {
+            model.addRow(new Object[] { rank++, row.getName(), String.format("$%.2f", row.getValue()) });
+        }
+    }
+
+    private void updateTrendScopes() {
+        TrendScope selected = (TrendScope) trendScopeComboBox.getSelectedItem();
+
+        // Avoid recomputing the trend for every item added
+        ActionListener[] listeners = trendScopeComboBox.getActionListeners();
+        for (ActionListener listener : listeners) {
+            trendScopeComboBox.removeActionListener(listener);
+        }
+
+        trendScopeComboBox.removeAllItems();
+        trendScopeComboBox.addItem(new TrendScope("All Projects", false, PledgeRollups.ALL));
+        for (Category category : mainController.getProjectController().getAllCategories()) {
+            TrendScope scope = new TrendScope("Category: " + category.getName(), true, category.getCategoryId());
+            trendScopeComboBox.addItem(scope);
+            if (scope.equals(selected))
+                trendScopeComboBox.setSelectedItem(scope);
+        }
+        for (Project project : mainController.getProjectController().getAllProjects()) {
+            TrendScope scope = new TrendScope("Project: " + project.getName(), false, project.getProjectId());
+            trendScopeComboBox.addItem(scope);
+            if (scope.equals(selected))
+                trendScopeComboBox.setSelectedItem(scope);
+        }
+
+        for (ActionListener listener : listeners) {
+            trendScopeComboBox.addActionListener(listener);
+        }
+        updateTrend();
+    }
+
+    private void updateTrend() {
+        TrendScope scope = (TrendScope) trendScopeComboBox.getSelectedItem();
+        PledgeRollups.Granularity granularity = (PledgeRollups.Granularity) trendGranularityComboBox
+                .getSelectedItem();
+        if (scope == null || granularity == null)
+            return;
+
+        List<PledgeRollups.Bucket> series = scope.category
+                ? statisticsController.getCategoryTrend(scope.id, granularity)
+                : statisticsController.getProjectTrend(scope.id, granularity);
+
+        DateTimeFormatter format = granularity == PledgeRollups.Granularity.DAILY
+                ? DateTimeFormatter.ofPattern("yyyy-MM-dd")
+                : DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00");
+
+        trendTableModel.setRowCount(0);
+        double cumulative = 0;
+        for (PledgeRollups.Bucket bucket : series) {
+            cumulative += bucket.getAmount();
+            Object[] row = {
+                    bucket.getStart().format(format),
+                    bucket.getCount(),
+                    String.format("$%.2f", bucket.getAmount()),
+                    String.format("$%.2f", cumulative)
+            };
+            trendTableModel.addRow(row);
+        }
+        trendChart.setSeries(series);
+    }
+
+    /**
+     * Entry in the trend selector: everything, one category or one project
+     */
+    private static class TrendScope {
+        private final String label;
+        private final boolean category;
+        private final String id;
+
+        TrendScope(String label, boolean category, String id) {
+            this.label = label;
+            this.category = category;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TrendScope && ((TrendScope) other).category == category
+                    && ((TrendScope) other).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Line chart of cumulative funds raised over time
+     */
+    private static class TrendChart extends JPanel {
+        private List<PledgeRollups.Bucket> series = new ArrayList<>();
+
+        TrendChart() {
+            setBackground(Color.WHITE);
+            setPreferredSize(new Dimension(500, 300));
+        }
+
+        void setSeries(List<PledgeRollups.Bucket> series) {
+            this.series = series;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            int margin = 40;
+            int width = getWidth() - 2 * margin;
+            int height = getHeight() - 2 * margin;
+            g.setColor(Color.GRAY);
+            g.drawLine(margin, margin + height, margin + width, margin + height);
+            g.drawLine(margin, margin, margin, margin + height);
+
+            if (series.isEmpty()) {
+                g.drawString("No pledges", margin + 10, margin + 20);
+                return;
+            }
+
+            double total = 0;
+            for (PledgeRollups.Bucket bucket : series) {
+                total += bucket.getAmount();
+            }
+            g.drawString(String.format("$%.0f", total), 2, margin - 5);
+
+            g.setColor(Color.BLUE);
+            double cumulative = 0;
+            int previousX = margin;
+            int previousY = margin + height;
+            for (int i = 0; i < series.size(); i++) {
+                cumulative += series.get(i).getAmount();
+                int x = margin + (series.size() == 1 ? width : (int) ((long) width * i / (series.size() - 1)));
+                int y = margin + height - (int) (total > 0 ? cumulative / total * height : 0);
+                g.drawLine(previousX, previousY, x, y);
+                previousX = x;
+                previousY = y;
+            }
+        }
+    }
+}